@@ -1,11 +1,16 @@
 /** Defines Bach's API. */
+@SuppressWarnings("module") // test.bach is not observable when compiling the main space
 module run.bach {
+  requires java.net.http;
   requires jdk.compiler;
+  requires jdk.httpserver;
   requires transitive jdk.jfr;
 
   exports run.bach;
   exports run.bach.info;
   exports run.bach.workflow;
+  exports run.workflow to
+      test.bach;
 
   uses java.util.spi.ToolProvider;
 }
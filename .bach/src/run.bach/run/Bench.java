@@ -0,0 +1,9 @@
+package run;
+
+class Bench {
+  public static void main(String... args) {
+    // The bench space is opt-in, include it for this action only
+    var options = Project.Options.ofSystemProperties().withBench(true);
+    Project.ofCurrentWorkingDirectory(options).bench(args);
+  }
+}
@@ -0,0 +1,64 @@
+package run;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import run.workflow.BuildDaemon;
+
+/**
+ * Forwards an invocation to a running daemon, or runs it regularly while a daemon starts.
+ *
+ * <p>Usage: {@code java .bach/src/run.bach/run/Client.java build}
+ */
+class Client {
+  public static void main(String... args) throws Exception {
+    if (args.length > 0 && Daemon.UNSERVED_ACTIONS.contains(args[0])) {
+      System.exit(java(regularCommand(args)));
+    }
+    var sources = Path.of(".bach", "src");
+    var code = BuildDaemon.invoke(BuildDaemon.SOCKET, BuildDaemon.stamp(sources), args);
+    if (code.isPresent()) System.exit(code.getAsInt());
+    if (args.length == 1 && args[0].equals("stop")) return;
+    startDaemon();
+    System.exit(java(regularCommand(args)));
+  }
+
+  static List<String> regularCommand(String... args) {
+    var command = new ArrayList<String>();
+    BuildDaemon.forwardedSystemProperties()
+        .forEach((key, value) -> command.add("-D" + key + "=" + value));
+    var name = args.length == 0 ? "" : args[0];
+    var action = Path.of(".bach/src/run.bach/run", capitalize(name) + ".java");
+    if (!name.isEmpty() && Files.isRegularFile(action)) {
+      command.add(action.toString());
+      command.addAll(List.of(args).subList(1, args.length));
+    } else {
+      command.add("@bach");
+      command.addAll(List.of(args));
+    }
+    return command;
+  }
+
+  static void startDaemon() throws Exception {
+    var log = Files.createDirectories(BuildDaemon.SOCKET.getParent()).resolve("daemon.log");
+    var command = List.of(javaExecutable(), ".bach/src/run.bach/run/Daemon.java");
+    new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(log.toFile()).start();
+  }
+
+  static int java(List<String> arguments) throws Exception {
+    var command = new ArrayList<String>();
+    command.add(javaExecutable());
+    command.addAll(arguments);
+    return new ProcessBuilder(command).inheritIO().start().waitFor();
+  }
+
+  static String javaExecutable() {
+    return Path.of(System.getProperty("java.home"), "bin", "java").toString();
+  }
+
+  static String capitalize(String name) {
+    if (name.isEmpty()) return name;
+    return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+  }
+}
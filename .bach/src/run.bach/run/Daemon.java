@@ -0,0 +1,51 @@
+package run;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import run.bach.ToolRunner;
+import run.workflow.BuildDaemon;
+
+/** Serves run actions and tool calls sent by {@link Client} from a long-lived JVM. */
+class Daemon {
+  /**
+   * Actions not served by the daemon, they loop or run long and would block all other clients.
+   * {@link Client} runs them in a regular JVM instead.
+   */
+  static final Set<String> UNSERVED_ACTIONS = Set.of("bench", "profile", "watch");
+
+  public static void main(String... args) throws Exception {
+    // Keep java-based tools warm in worker JVMs for the lifetime of the daemon
+    if (System.getProperty("-Dworkers".substring(2)) == null) System.setProperty("workers", "true");
+    var stamp = BuildDaemon.stamp(Path.of(".bach", "src"));
+    // Shut down after three idle hours, or as configured in minutes
+    var idle = Duration.ofMinutes(Long.getLong("-Ddaemon.idle".substring(2), 180));
+    BuildDaemon.serve(BuildDaemon.SOCKET, stamp, idle, Daemon::handle);
+  }
+
+  static int handle(List<String> args) {
+    if (args.isEmpty()) {
+      System.err.println("Usage: Client.java ACTION|TOOL [ARGS...]");
+      return 1;
+    }
+    if (UNSERVED_ACTIONS.contains(args.getFirst())) {
+      System.err.printf("Action %s is not served by a daemon, run it directly%n", args.getFirst());
+      return 1;
+    }
+    var rest = args.subList(1, args.size()).toArray(String[]::new);
+    switch (args.getFirst()) {
+      case "build" -> Build.main(rest);
+      case "clean" -> Clean.main(rest);
+      case "format" -> Format.main(rest);
+      case "prepare" -> Prepare.main(rest);
+      case "start" -> Start.main(rest);
+      case "status" -> Status.main(rest);
+      case "test" -> Test.main(rest);
+      default -> {
+        return ToolRunner.ofSystem().run(args.getFirst(), rest).code();
+      }
+    }
+    return 0;
+  }
+}
@@ -0,0 +1,24 @@
+package run;
+
+import java.nio.file.Path;
+import run.workflow.BuildTimeline;
+
+/**
+ * Builds the project while recording a timeline of all workflow steps and tool calls.
+ *
+ * <p>Compile steps of modules are chained along the project's module graph to find the critical
+ * path.
+ *
+ * <p>Prints a summary of the timeline and writes it as a Chrome trace file to {@code
+ * .bach/out/build-trace.json}, to be opened in {@code chrome://tracing} or Perfetto.
+ */
+class Profile {
+  public static void main(String... args) {
+    var project = Project.ofCurrentWorkingDirectory();
+    var timeline = BuildTimeline.record(project::build).with(project.moduleGraph());
+    var limit = Integer.getInteger("-Dprofile.top".substring(2), 10);
+    System.out.println(timeline.toSummary(limit));
+    var trace = timeline.writeChromeTrace(Path.of(".bach", "out", "build-trace.json"));
+    System.out.println("Trace written to " + trace.toUri());
+  }
+}
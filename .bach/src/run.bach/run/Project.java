@@ -1,7 +1,18 @@
 package run;
 
+import java.io.File;
+import java.lang.module.ModuleFinder;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import run.bach.ModuleLocator;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import run.bach.ToolCall;
 import run.bach.ToolRunner;
 import run.bach.workflow.Builder;
@@ -15,10 +26,105 @@ import run.bach.workflow.Structure.Space;
 import run.bach.workflow.Structure.Spaces;
 import run.bach.workflow.Workflow;
 import run.info.org.junit.JUnit;
+import run.workflow.ArchiveStep;
+import run.workflow.ArchiveSteps;
+import run.workflow.BuildCache;
+import run.workflow.BuildEvents;
+import run.workflow.ClassDataSharing;
+import run.workflow.CompilerService;
+import run.workflow.IncrementalCompilation;
+import run.workflow.LayeredTestRunner;
+import run.workflow.ModuleDeclaration;
+import run.workflow.ModuleGraph;
+import run.workflow.ModuleLocationIndex;
+import run.workflow.ModuleScheduler;
+import run.workflow.ParallelModuleResolver;
+import run.workflow.RemoteCache;
+import run.workflow.SourceWatcher;
+import run.workflow.TestImpact;
+import run.workflow.TreeDeleter;
+
+public record Project(Options options, BuildCache cache, Workflow workflow, ArchiveSteps archives)
+    implements Builder, Starter {
+  /**
+   * Project-specific options.
+   *
+   * @param verbose print more messages
+   * @param incremental compile only modules with changed inputs
+   * @param warm compile with a compiler service that keeps javac warm
+   * @param cds create and use a class data sharing archive for the image's launcher
+   * @param layers run each test module in its own module layer, several at a time
+   * @param fork run each test module in its own JVM, instead of in a module layer
+   * @param all run all test modules, instead of only those affected by changes
+   * @param bench include the bench space, requiring JMH libraries
+   */
+  public record Options(
+      boolean verbose,
+      boolean incremental,
+      boolean warm,
+      boolean cds,
+      boolean layers,
+      boolean fork,
+      boolean all,
+      boolean bench) {
+    static Options ofSystemProperties() {
+      var verbose = Boolean.getBoolean("-Debug".substring(2));
+      var incremental = !Boolean.getBoolean("-Drebuild".substring(2));
+      var warm = !Boolean.getBoolean("-Dcold".substring(2));
+      var cds = !Boolean.getBoolean("-Dno-cds".substring(2));
+      var layers = !Boolean.getBoolean("-Dno-layers".substring(2));
+      var fork = Boolean.getBoolean("-Dfork-tests".substring(2));
+      var all = Boolean.getBoolean("-Dall".substring(2));
+      var bench = Boolean.getBoolean("-Dbench".substring(2));
+      return new Options(verbose, incremental, warm, cds, layers, fork, all, bench);
+    }
+
+    public Options withIncremental(boolean incremental) {
+      return new Options(verbose, incremental, warm, cds, layers, fork, all, bench);
+    }
+
+    public Options withWarm(boolean warm) {
+      return new Options(verbose, incremental, warm, cds, layers, fork, all, bench);
+    }
+
+    public Options withCds(boolean cds) {
+      return new Options(verbose, incremental, warm, cds, layers, fork, all, bench);
+    }
+
+    public Options withLayers(boolean layers) {
+      return new Options(verbose, incremental, warm, cds, layers, fork, all, bench);
+    }
+
+    public Options withAll() {
+      return withAll(true);
+    }
+
+    public Options withAll(boolean all) {
+      return new Options(verbose, incremental, warm, cds, layers, fork, all, bench);
+    }
+
+    public Options withBench(boolean bench) {
+      return new Options(verbose, incremental, warm, cds, layers, fork, all, bench);
+    }
+  }
+
+  static final String JMH_VERSION = "1.37";
+
+  /** Modules required by JMH's automatic module at run time. */
+  static final List<String> JMH_RUNTIME_MODULES = List.of("jopt.simple", "commons.math3");
 
-public record Project(boolean verbose, Workflow workflow) implements Builder, Starter {
   static Project ofCurrentWorkingDirectory() {
-    var verbose = Boolean.getBoolean("-Debug".substring(2));
+    return ofCurrentWorkingDirectory(Options.ofSystemProperties());
+  }
+
+  static Project ofCurrentWorkingDirectory(Options options) {
+    var cacheRoot = Path.of(".bach", "var", "cache");
+    var cacheLimit = Long.getLong("-Dcache.limit".substring(2), 1L << 30);
+    var cacheRemote = System.getProperty("-Dcache.remote".substring(2), "");
+    var cache =
+        cacheRemote.isBlank()
+            ? BuildCache.of(cacheRoot, cacheLimit)
+            : BuildCache.of(cacheRoot, cacheLimit, RemoteCache.ofHttp(URI.create(cacheRemote)));
     var folders = Folders.ofCurrentWorkingDirectory();
     var basics = new Basics("Bach", "2024-ea");
     var main =
@@ -32,20 +138,104 @@ public record Project(boolean verbose, Workflow workflow) implements Builder, St
             .withLauncher("tests=test.bach/test.bach.Tests")
             .withModule("src/test.bach", "src/test.bach/test/java/module-info.java")
             .withModule("src/test.junit", "src/test.junit/test/java/module-info.java");
+    var bench =
+        new Space("bench", main)
+            .withModule("src/bench.bach", "src/bench.bach/bench/java/module-info.java");
+    // Compile all module mappings into one index, the first mapping of a module name wins
     var libraries =
-        ModuleLocator.compose(
-            JUnit.modules(),
-            ModuleLocator.of(
-                "org.junitpioneer", "pkg:maven/org.junit-pioneer/junit-pioneer@2.2.0"));
-    var structure = new Structure(basics, new Spaces(main, test), libraries);
+        ModuleLocationIndex.builder()
+            .with("junit", JUnit.modules())
+            .with("org.junitpioneer", "pkg:maven/org.junit-pioneer/junit-pioneer@2.2.0")
+            .with("jmh.core", "pkg:maven/org.openjdk.jmh/jmh-core@" + JMH_VERSION)
+            .with(
+                "jmh.generator.annprocess",
+                "pkg:maven/org.openjdk.jmh/jmh-generator-annprocess@" + JMH_VERSION)
+            .with("jopt.simple", "pkg:maven/net.sf.jopt-simple/jopt-simple@5.0.4")
+            .with("commons.math3", "pkg:maven/org.apache.commons/commons-math3@3.6.1")
+            .build();
+    // Compile and run benchmarks only on demand, they require JMH libraries
+    var spaces = options.bench() ? new Spaces(main, test, bench) : new Spaces(main, test);
+    var structure = new Structure(basics, spaces, libraries);
     var runner = ToolRunner.ofSystem();
-    return new Project(verbose, new Workflow(folders, structure, runner));
+    var archives = new ArchiveSteps(folders.out("archives.properties"));
+    return new Project(options, cache, new Workflow(folders, structure, runner), archives);
+  }
+
+  public Project with(Options options) {
+    return new Project(options, cache, workflow, archives);
   }
 
   public Space space(String name) {
     return workflow.structure().spaces().space(name);
   }
 
+  /**
+   * Builds the project and runs JMH benchmarks of the bench space, writing machine-readable
+   * results.
+   *
+   * <p>JMH forks a JVM for each benchmark and passes its own class path to it, so benchmarks run
+   * on the class path. Results are written to {@code .bach/out/bench/results.json}.
+   *
+   * @param args JMH options, like a regular expression selecting benchmarks
+   */
+  public void bench(String... args) {
+    if (!options.bench()) throw new IllegalStateException("Bench space not included");
+    resolveLibraries(JMH_RUNTIME_MODULES.toArray(String[]::new));
+    build();
+    var folders = workflow.folders();
+    var classPath =
+        Stream.of(folders.out("bench", "modules"), folders.out("main", "modules"), Path.of("lib"))
+            .map(directory -> directory.resolve("*").toString())
+            .collect(Collectors.joining(File.pathSeparator));
+    var results = folders.out("bench", "results.json");
+    var java =
+        ToolCall.of("java")
+            .add("--class-path", classPath)
+            .add("org.openjdk.jmh.Main")
+            .add("-rf", "json")
+            .add("-rff", results.toString());
+    for (var arg : args) java = java.add(arg);
+    run(java);
+  }
+
+  /**
+   * Builds the project whenever its sources change, until the JVM is terminated.
+   *
+   * <p>The project stays resident between cycles: javac is kept warm, and only modules with
+   * changed inputs and modules requiring them are compiled. Tests affected by a change are run if
+   * requested. The content directories of all declared modules are watched.
+   *
+   * @param test run affected tests after each build
+   */
+  public void watch(boolean test) {
+    // Compile incrementally with a warm javac, skip CDS training, and test in module layers
+    var resident =
+        with(
+            options
+                .withIncremental(true)
+                .withWarm(true)
+                .withCds(false)
+                .withLayers(true)
+                .withAll(false));
+    var roots = moduleContentDirectories();
+    try (var watcher = SourceWatcher.of(roots)) {
+      for (var changes = Set.of(roots.getFirst()); !changes.isEmpty(); changes = watcher.await()) {
+        var start = System.nanoTime();
+        try {
+          resident.build();
+          if (test) resident.test();
+          var millis = (System.nanoTime() - start) / 1_000_000;
+          System.out.printf("Built in %d ms, watching %s for changes...%n", millis, roots);
+        } catch (RuntimeException exception) {
+          System.err.println("Build failed: " + exception.getMessage());
+          System.out.printf("Watching %s for changes...%n", roots);
+        }
+      }
+    } catch (InterruptedException exception) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
   public void printStatus() {
     var structure = workflow.structure();
     System.out.println(structure.toNameAndVersion());
@@ -55,26 +245,227 @@ public record Project(boolean verbose, Workflow workflow) implements Builder, St
     System.out.println(workflow.runner());
   }
 
+  /**
+   * Resolves library modules required by modules of all spaces into the {@code lib} directory.
+   *
+   * <p>Missing modules are located via the structure's libraries and downloaded in parallel waves.
+   * Resolved modules are recorded in {@code .bach/var/lib.lock}, checked before {@code lib} is
+   * resolved again.
+   *
+   * @param modules additional library modules to resolve, like modules only needed at run time
+   */
+  public void resolveLibraries(String... modules) {
+    var event = BuildEvents.step("resolve", "", "");
+    var declared = new TreeSet<String>();
+    var required = new TreeSet<>(List.of(modules));
+    for (var info : moduleInfoFiles()) {
+      var declaration = ModuleDeclaration.of(info);
+      declared.add(declaration.name());
+      required.addAll(declaration.requires());
+    }
+    required.removeAll(declared);
+    var system = ModuleFinder.ofSystem();
+    required.removeIf(name -> system.find(name).isPresent());
+    var libraries = ModuleLocationIndex.of(workflow.structure().libraries());
+    var resolver = ParallelModuleResolver.ofSingleDirectory(Path.of("lib"), libraries.toLocator());
+    // Skip resolution while lib/ contains exactly the modules recorded by a previous resolution
+    var skipped = resolver.resolveLocked(required, Path.of(".bach", "var", "lib.lock"));
+    if (skipped && options.verbose()) System.out.println("Skip resolution, lib.lock matches lib");
+    event.commit();
+  }
+
+  /** {@return the content directories of modules declared in all spaces} */
+  List<Path> moduleContentDirectories() {
+    var directories = new ArrayList<Path>();
+    var spaces = workflow.structure().spaces();
+    spaces.forEach(space -> space.modules().forEach(module -> directories.add(module.content())));
+    return List.copyOf(directories);
+  }
+
+  /** {@return the module-info.java files of modules declared in all spaces} */
+  List<Path> moduleInfoFiles() {
+    var files = new ArrayList<Path>();
+    var spaces = workflow.structure().spaces();
+    spaces.forEach(space -> space.modules().forEach(module -> files.add(module.info())));
+    return List.copyOf(files);
+  }
+
+  /** {@return the graph of modules declared in all spaces} */
+  ModuleGraph moduleGraph() {
+    return ModuleGraph.of(moduleInfoFiles().stream().map(ModuleDeclaration::of).toList());
+  }
+
+  @Override
+  public void build() {
+    resolveLibraries();
+    var event = BuildEvents.step("build", "", "");
+    Builder.super.build();
+    runDeferredCalls();
+    cache.awaitPushes();
+    event.commit();
+    if (!options.cds()) return;
+    // Train the launcher only if the image's modules changed, its scripts map the archive
+    classDataSharing()
+        .ifPresent(
+            cds -> {
+              // An image that wasn't rebuilt by jlink still contains its trained archive
+              if (cds.trained()) {
+                if (options.verbose()) System.out.println("Skip CDS, image is unchanged");
+                return;
+              }
+              var train = BuildEvents.step("cds", "main", "");
+              var archives = workflow.folders().out("main", "cds");
+              var trained = cds.trainUnlessKept(archives, "jar", "--version");
+              if (!trained && options.verbose()) System.out.println("Reuse kept CDS archive");
+              train.commit();
+            });
+  }
+
+  @Override
+  public void run(ToolCall call) {
+    var step = ArchiveStep.of(call.tool().name(), call.arguments());
+    // Defer jar calls, independent archives of a space are created at the same time
+    if (step.isPresent() && step.get().tool().equals("jar")) {
+      archives.defer(step.get(), () -> runNow(call, step));
+      return;
+    }
+    runDeferredCalls();
+    runNow(call, step);
+  }
+
+  /** Runs all deferred jar calls, before any other tool reads their archives. */
+  void runDeferredCalls() {
+    archives.flush(ModuleScheduler.ofAvailableProcessors());
+  }
+
+  /** Runs the given call immediately, the step describes it if it's an archiving call. */
+  void runNow(ToolCall call, Optional<ArchiveStep> step) {
+    // Emit an event for each tool call of the workflow, including those run by its steps
+    var event = new BuildEvents.ToolCallEvent();
+    event.begin();
+    event.code = -1;
+    try {
+      if (step.isPresent()) runArchiveStep(call, step.get());
+      else Builder.super.run(call);
+      event.code = 0;
+    } finally {
+      event.end();
+      if (event.shouldCommit()) {
+        event.tool = call.tool().name();
+        event.kind = "runner";
+        event.arguments = call.arguments().size();
+        event.commit();
+      }
+    }
+  }
+
+  /**
+   * Runs a jar or jlink call, unless its output exists and its inputs are unchanged.
+   *
+   * <p>The fingerprint of the call's inputs and arguments is also the key of its output in the
+   * build cache: a cached output is restored instead of running the call.
+   */
+  void runArchiveStep(ToolCall call, ArchiveStep step) {
+    var fingerprint = step.fingerprint();
+    if (options.incremental() && archives.upToDate(step, fingerprint)) {
+      if (options.verbose()) {
+        System.out.printf("Skip %s, %s is up-to-date%n", step.tool(), step.output());
+      }
+      return;
+    }
+    var outputs = Map.of("output", step.output());
+    if (cache.restore(fingerprint, outputs)) {
+      if (options.verbose()) System.out.printf("Restore %s from cache%n", step.output());
+    } else {
+      TreeDeleter.delete(step.output()); // a restored output is read-only
+      Builder.super.run(call);
+      cache.store(fingerprint, outputs);
+    }
+    archives.commit(step, fingerprint);
+  }
+
+  @Override
+  public void start(String... args) {
+    var cds = classDataSharing();
+    if (options.cds() && cds.isPresent() && Files.isRegularFile(cds.get().archive())) {
+      cds.get().start(args);
+      return;
+    }
+    Starter.super.start(args);
+  }
+
+  Optional<ClassDataSharing> classDataSharing() {
+    return ClassDataSharing.of(workflow.folders().out("main", "image"), "bach");
+  }
+
+  @Override
+  public void clean() {
+    // Move the output tree out of the way and delete it while the build continues
+    var event = BuildEvents.step("clean", "", "");
+    TreeDeleter.deleteInBackground(workflow.folders().out());
+    event.commit();
+  }
+
   @Override
   public boolean builderDoesCleanAtTheBeginning() {
-    return true;
+    return !options.incremental();
   }
 
   @Override
   public void classesCompilerRunJavacToolCall(ToolCall javac) {
-    run(javac.add("-X" + "lint:all").add("-W" + "error"));
-    // Retain only "bach" subdirectory in out/main/classes/*/run.bach/run/* directory
+    runDeferredCalls();
+    var space = ClassesCompiler.space().name();
+    var checked = javac.add("-X" + "lint:all").add("-W" + "error");
+    if (space.equals("bench")) {
+      // Generate JMH harnesses with its annotation processor, jmh.core is an automatic module
+      checked =
+          checked
+              .add("-X" + "lint:-requires-automatic,-processing")
+              .add("--processor-module-path", "lib");
+    }
+    var compilation = IncrementalCompilation.of(checked);
+    var modules = options.incremental() ? compilation.affected() : compilation.javac().modules();
+    if (modules.isEmpty()) {
+      System.out.printf("Skip javac, all modules of %s space are up-to-date%n", space);
+      return;
+    }
+    compilation.clean(modules);
+    // Compile each module as soon as all modules it requires are compiled
+    ModuleScheduler.ofAvailableProcessors()
+        .run(
+            compilation.graph(modules),
+            module -> {
+              var event = BuildEvents.step("compile", space, module);
+              var key = compilation.cacheKey(module);
+              var outputs = Map.of("classes", compilation.javac().destination(module));
+              if (!cache.restore(key, outputs)) {
+                var call = compilation.javac().toToolCall(List.of(module), "-implicit:none");
+                if (options.warm()) CompilerService.shared().compile(call);
+                else run(call);
+                cache.store(key, outputs);
+              }
+              compilation.commit(List.of(module));
+              event.commit();
+            });
+    if (options.verbose()) {
+      System.out.printf("Build cache after compiling %s: %s%n", space, cache.statistics());
+    }
+    if (modules.contains("run.bach")) pruneRunPackageOfMainSpace();
+  }
+
+  void pruneRunPackageOfMainSpace() {
+    // Retain only "bach" and "workflow" subdirectories in out/main/classes/*/run.bach/run/*
     if (ClassesCompiler.space().name().equals("main")) {
       var classes = classesCompilerUsesDestinationDirectory();
       var run = classes.resolve("run.bach", "run");
-      var bach = run.resolve("bach");
-      cleanerPrune(run, path -> !path.equals(bach));
+      var retained = Set.of(run.resolve("bach"), run.resolve("workflow"));
+      TreeDeleter.prune(run, path -> !retained.contains(path));
     }
   }
 
   @Override
   public ToolCall modulesCompilerUsesJarToolCall() {
-    return Builder.super.modulesCompilerUsesJarToolCall().when(verbose, "--verbose");
+    return Builder.super.modulesCompilerUsesJarToolCall().when(options.verbose(), "--verbose");
   }
 
   @Override
@@ -85,6 +476,45 @@ public record Project(boolean verbose, Workflow workflow) implements Builder, St
 
   @Override
   public void junitTesterRunJUnitToolCall(ToolCall junit) {
-    run(junit.add("--details", "none").add("--disable-banner").add("--disable-ansi-colors"));
+    runDeferredCalls();
+    var event = BuildEvents.step("test", "test", "");
+    var call = junit.add("--details", "none").add("--disable-banner").add("--disable-ansi-colors");
+    var modules = new ArrayList<String>();
+    var arguments = new ArrayList<String>();
+    for (var iterator = call.arguments().iterator(); iterator.hasNext(); ) {
+      var argument = iterator.next();
+      if (argument.equals("--select-module")) modules.add(iterator.next());
+      else if (argument.startsWith("--select-module=")) modules.add(argument.substring(16));
+      else arguments.add(argument);
+    }
+    if (options.layers() && !modules.isEmpty()) {
+      // Run test modules in isolated module layers, or JVMs, and merge their reports
+      var folders = workflow.folders();
+      var modulePath =
+          List.of(folders.out("test", "modules"), folders.out("main", "modules"), Path.of("lib"));
+      var reports = folders.out("test", "reports");
+      var parallelism =
+          Integer.getInteger(
+              "-Dtest.parallelism".substring(2), Runtime.getRuntime().availableProcessors());
+      // Select test modules requiring a module that changed since their last successful run
+      var impact = new TestImpact(modulePath, Path.of(".bach", "var", "test-impact.properties"));
+      var selected = options.all() ? modules : List.copyOf(impact.affected(modules));
+      if (selected.size() < modules.size()) {
+        var skipped = new ArrayList<>(modules);
+        skipped.removeAll(selected);
+        System.out.printf("Skip unaffected test modules %s, use --all to run them%n", skipped);
+      }
+      if (!selected.isEmpty()) {
+        var runner = new LayeredTestRunner(modulePath, reports, parallelism, options.fork());
+        var results = runner.execute(selected, arguments);
+        // Record passed test modules before failing, they are only run again when affected
+        var passed = results.stream().filter(LayeredTestRunner.Result::passed);
+        impact.commit(passed.map(LayeredTestRunner.Result::module).toList());
+        LayeredTestRunner.requireAllPassed(results);
+      }
+    } else {
+      run(call);
+    }
+    event.commit();
   }
 }
@@ -1,7 +1,11 @@
 package run;
 
+import java.util.List;
+
 class Test {
   public static void main(String... args) {
-    Project.ofCurrentWorkingDirectory().test();
+    var project = Project.ofCurrentWorkingDirectory();
+    if (List.of(args).contains("--all")) project = project.with(project.options().withAll());
+    project.test();
   }
 }
@@ -0,0 +1,9 @@
+package run;
+
+import java.util.List;
+
+class Watch {
+  public static void main(String... args) {
+    Project.ofCurrentWorkingDirectory().watch(List.of(args).contains("--test"));
+  }
+}
@@ -0,0 +1,79 @@
+package run.demo;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.ToIntFunction;
+import java.util.spi.ToolProvider;
+import run.workflow.CompilerService;
+
+/** Compares per-module compilation times of javac's tool provider and the compiler service. */
+class CompilerServiceDemo {
+  public static void main(String... args) throws Exception {
+    var modules = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+    var rounds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+    var temp = Files.createTempDirectory("compiler-service-demo-");
+    var sources = generateModules(temp.resolve("src"), modules);
+
+    var javac = ToolProvider.findFirst("javac").orElseThrow();
+    var service = CompilerService.shared();
+    for (int round = 1; round <= rounds; round++) {
+      var provider =
+          measure(
+              sources,
+              temp.resolve("out-provider-" + round),
+              arguments -> javac.run(silent(), silent(), arguments.toArray(String[]::new)));
+      var warm =
+          measure(
+              sources,
+              temp.resolve("out-service-" + round),
+              arguments -> service.compile(arguments, silent()));
+      System.out.printf(
+          "Round %d: %d modules, tool provider %6.1f ms/module, compiler service %6.1f ms/module%n",
+          round, modules, provider, warm);
+    }
+  }
+
+  static List<String> generateModules(Path src, int count) throws Exception {
+    var names = new ArrayList<String>();
+    for (int i = 0; i < count; i++) {
+      var name = "m" + i;
+      var requires = i == 0 ? "" : "requires m" + (i - 1) + ";";
+      var module = Files.createDirectories(src.resolve(name));
+      Files.writeString(
+          module.resolve("module-info.java"),
+          "module %s { %s exports %s; }".formatted(name, requires, name));
+      var pkg = Files.createDirectories(module.resolve(name));
+      Files.writeString(
+          pkg.resolve("Api.java"),
+          "package %s; public interface Api { default String id() { return \"%s\"; } }"
+              .formatted(name, name));
+      names.add(name);
+    }
+    return names;
+  }
+
+  static double measure(List<String> modules, Path out, ToIntFunction<List<String>> compiler) {
+    var src = out.resolveSibling("src");
+    var begin = System.nanoTime();
+    for (var module : modules) {
+      var arguments =
+          List.of(
+              "--release", Integer.toString(Runtime.version().feature()),
+              "--module-source-path", src.toString(),
+              "-d", out.toString(),
+              "-implicit:none",
+              "--module", module);
+      var code = compiler.applyAsInt(arguments);
+      if (code != 0) throw new Error("Compilation of " + module + " failed: " + code);
+    }
+    return (System.nanoTime() - begin) / 1e6 / modules.size();
+  }
+
+  static PrintWriter silent() {
+    return new PrintWriter(new StringWriter());
+  }
+}
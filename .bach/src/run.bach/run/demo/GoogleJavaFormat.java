@@ -6,11 +6,13 @@
 package run.demo;
 
 import java.net.URI;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.spi.ToolProvider;
 import run.bach.ToolInstaller;
 import run.bach.ToolProgram;
+import run.workflow.JavaWorkerPool;
+import run.workflow.ModuleStore;
+import run.workflow.ToolInstallation;
 
 /**
  * Google Java Format installer.
@@ -42,12 +44,13 @@ public record GoogleJavaFormat(String version) implements ToolInstaller {
   @Override
   public ToolProvider install(Path into) throws Exception {
     var filename = "google-java-format-" + version + "-all-deps.jar";
-    var target = into.resolve(filename);
-    if (!Files.exists(target)) {
-      var releases = "https://github.com/google/google-java-format/releases/download/";
-      var source = releases + "v" + version + "/" + filename;
-      download(target, URI.create(source));
-    }
+    var releases = "https://github.com/google/google-java-format/releases/download/";
+    var source = URI.create(releases + "v" + version + "/" + filename);
+    var home =
+        ToolInstallation.ensure(
+            into, directory -> ModuleStore.ofUserHome().fetch(source, directory.resolve(filename)));
+    var target = home.resolve(filename);
+    if (JavaWorkerPool.enabled()) return JavaWorkerPool.provider(name(), target);
     return ToolProgram.java("-jar", target.toString());
   }
 }
@@ -7,6 +7,7 @@ import run.bach.Tool;
 import run.bach.ToolInstaller;
 import run.bach.ToolProgram;
 import run.bach.workflow.Folders;
+import run.workflow.ToolInstallation;
 
 public record Greeter(String version) implements ToolInstaller {
   public static void main(String... args) throws Exception {
@@ -24,19 +25,16 @@ public record Greeter(String version) implements ToolInstaller {
   @Override
   public ToolProvider install(Path into) throws Exception {
     System.out.println(into.toUri());
-    var file = into.resolve("Prog.java");
-    if (!Files.exists(file)) {
-      Files.createDirectories(into);
-      var text = // language=java
-          """
-          class Prog {
-            public static void main(String... args) {
-              System.out.println("Greetings!");
-            }
+    var text = // language=java
+        """
+        class Prog {
+          public static void main(String... args) {
+            System.out.println("Greetings!");
           }
-          """;
-      Files.writeString(file, text);
-    }
-    return ToolProgram.java(file.toString());
+        }
+        """;
+    var home =
+        ToolInstallation.ensure(into, dir -> Files.writeString(dir.resolve("Prog.java"), text));
+    return ToolProgram.java(home.resolve("Prog.java").toString());
   }
 }
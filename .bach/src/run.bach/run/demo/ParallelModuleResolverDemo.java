@@ -0,0 +1,80 @@
+package run.demo;
+
+import com.sun.net.httpserver.SimpleFileServer;
+import java.lang.module.ModuleFinder;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.spi.ToolProvider;
+import run.workflow.ParallelModuleResolver;
+
+/** Resolves a chain of modules served by a local HTTP server into an empty directory. */
+class ParallelModuleResolverDemo {
+  public static void main(String... args) throws Exception {
+    var temp = Files.createTempDirectory("parallel-module-resolver-");
+    var repository = Files.createDirectories(temp.resolve("repository"));
+    createModule(temp, repository, "d");
+    createModule(temp, repository, "b", "d");
+    createModule(temp, repository, "c", "d");
+    createModule(temp, repository, "a", "b", "c");
+
+    var address = new InetSocketAddress("127.0.0.1", 0);
+    var level = SimpleFileServer.OutputLevel.NONE;
+    var server = SimpleFileServer.createFileServer(address, repository.toAbsolutePath(), level);
+    server.start();
+    try {
+      var port = server.getAddress().getPort();
+      var lib = temp.resolve("lib");
+      System.setProperty("store", temp.resolve("store").toString());
+      var resolver =
+          ParallelModuleResolver.ofSingleDirectory(
+              lib,
+              module -> {
+                var jar = repository.resolve(module + ".jar");
+                if (Files.notExists(jar)) return Optional.empty();
+                var size = jar.toFile().length();
+                var uri = "http://127.0.0.1:%d/%s.jar#SIZE=%d".formatted(port, module, size);
+                return Optional.of(URI.create(uri));
+              });
+      resolver.resolveModule("a");
+      System.out.println("Missing after 1st wave: " + resolver.findMissingModules());
+      resolver.resolveMissingModules();
+      var lockfile = temp.resolve("lib.lock");
+      var roots = Set.of("a");
+      System.out.println("Skipped with new lockfile? " + resolver.resolveLocked(roots, lockfile));
+      System.out.println("Skipped with same lockfile? " + resolver.resolveLocked(roots, lockfile));
+      System.out.print(Files.readString(lockfile));
+      ModuleFinder.of(lib).findAll().stream()
+          .map(ref -> ref.descriptor().toNameAndVersion() + " -> " + ref.location().orElseThrow())
+          .sorted()
+          .forEach(System.out::println);
+      var other = temp.resolve("other");
+      ParallelModuleResolver.ofSingleDirectory(other, resolver.locator())
+          .resolveModules(List.of("a", "b", "c", "d"));
+      var links = Files.getAttribute(other.resolve("a.jar"), "unix:nlink");
+      System.out.println("Links to stored a.jar: " + links);
+    } finally {
+      server.stop(0);
+    }
+  }
+
+  static void createModule(Path temp, Path repository, String name, String... requires)
+      throws Exception {
+    var source = Files.createDirectories(temp.resolve("src").resolve(name));
+    var lines = new StringBuilder("module " + name + " {");
+    for (var required : requires) lines.append(" requires ").append(required).append(";");
+    Files.writeString(source.resolve("module-info.java"), lines.append(" }").toString());
+    var classes = temp.resolve("classes").resolve(name);
+    var javac = ToolProvider.findFirst("javac").orElseThrow();
+    var modulePath = temp.resolve("classes").toString();
+    var unit = source.resolve("module-info.java").toString();
+    javac.run(System.out, System.err, "-d", classes.toString(), "-p", modulePath, unit);
+    var jar = ToolProvider.findFirst("jar").orElseThrow();
+    var file = repository.resolve(name + ".jar").toString();
+    jar.run(System.out, System.err, "--create", "--file", file, "-C", classes.toString(), ".");
+  }
+}
@@ -0,0 +1,43 @@
+package run.demo;
+
+import java.net.URI;
+import java.nio.file.Files;
+import java.util.Map;
+import run.workflow.BuildCache;
+import run.workflow.Digest;
+import run.workflow.RemoteCache;
+import run.workflow.RemoteCacheServer;
+
+class RemoteCacheDemo {
+  public static void main(String... args) throws Exception {
+    var temp = Files.createTempDirectory("remote-cache-demo-");
+    try (var server = RemoteCacheServer.startOnLoopbackAddress(temp.resolve("server"))) {
+      System.out.println("Remote cache server listening at " + server.uri());
+      var key = Digest.sha256().add("demo").toHexString();
+
+      // agent 1 stores an output locally and pushes it to the remote cache
+      var output = temp.resolve("agent-1/out/greeting.txt");
+      Files.createDirectories(output.getParent());
+      Files.writeString(output, "Hello");
+      var agent1 = BuildCache.of(temp.resolve("agent-1/cache"), 1 << 20, remote(server));
+      agent1.store(key, Map.of("greeting", output));
+      System.out.println("agent-1 " + agent1.statistics());
+
+      // agent 2 misses locally and downloads the output from the remote cache
+      var target = temp.resolve("agent-2/out/greeting.txt");
+      var agent2 = BuildCache.of(temp.resolve("agent-2/cache"), 1 << 20, remote(server));
+      if (!agent2.restore(key, Map.of("greeting", target))) throw new Error("Miss?!");
+      System.out.println("agent-2 " + agent2.statistics() + " -> " + Files.readString(target));
+    }
+
+    // unreachable remote caches don't break builds
+    var offline = RemoteCache.ofHttp(URI.create("http://localhost:1/cache/"));
+    var agent3 = BuildCache.of(temp.resolve("agent-3/cache"), 1 << 20, offline);
+    agent3.restore("0123456789abcdef", Map.of("greeting", temp.resolve("agent-3/out")));
+    System.out.println("agent-3 " + agent3.statistics());
+  }
+
+  static RemoteCache remote(RemoteCacheServer server) {
+    return RemoteCache.ofHttp(server.uri());
+  }
+}
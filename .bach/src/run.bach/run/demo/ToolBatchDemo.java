@@ -0,0 +1,21 @@
+package run.demo;
+
+import run.bach.*;
+import run.workflow.ToolBatch;
+
+class ToolBatchDemo {
+  public static void main(String... args) {
+    ToolBatch.ofAvailableProcessors(ToolRunner.ofSilence())
+        // tool providers
+        .add("jar", ToolCall.of("jar").add("--version"))
+        .add("javac", ToolCall.of("javac").add("--version"))
+        .add("javadoc", ToolCall.of("javadoc").add("--version"))
+        .add("jlink", ToolCall.of("jlink").add("--version"))
+        // tool programs
+        .add("java", ToolCall.of("java").add("--version"))
+        .add("jshell", ToolCall.of("jshell").add("--version"))
+        // ordered after all others
+        .add("jdeps", ToolCall.of("jdeps").add("--version"), "jar", "javac", "java")
+        .run();
+  }
+}
@@ -2,6 +2,7 @@ package run.demo;
 
 import run.bach.*;
 import run.info.bach.*;
+import run.workflow.IndexedToolFinder;
 
 class ToolVersionsDemo {
   public static void main(String... args) {
@@ -30,7 +31,7 @@ class ToolVersionsDemo {
             .with("run.bach/google-java-format@1.19", new GoogleJavaFormat("1.19.2"))
             .with(new Maven("3.9.9"));
 
-    var runner = ToolRunner.of(finder);
+    var runner = ToolRunner.of(IndexedToolFinder.of(finder));
     runner.run("ant", "-version");
     runner.run("bld", "version");
     runner.run("junit", "--version");
@@ -0,0 +1,117 @@
+package run.workflow;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * An archiving tool call, like jar or jlink, described by the files it reads and the one it writes.
+ *
+ * <p>The fingerprint of a step covers the tool's name, the runtime version, all arguments, and the
+ * contents of all input files and directories. JAR and JMOD files are fingerprinted by the names
+ * and CRC-32 values of their entries, ignoring timestamps. A step whose output exists and whose
+ * fingerprint is unchanged since it last ran doesn't need to run again.
+ *
+ * @param tool the name of the tool
+ * @param arguments the arguments of the tool call
+ * @param output the file or directory written by the tool call
+ * @param inputs files and directories read by the tool call
+ */
+public record ArchiveStep(String tool, List<String> arguments, Path output, List<Path> inputs) {
+  private static final Set<String> JAR_VALUES =
+      Set.of("--main-class", "-e", "--module-version", "--hash-modules", "--release", "--date");
+
+  /** {@return a step for the given tool call, if it creates an archive of known inputs} */
+  public static Optional<ArchiveStep> of(String tool, List<String> arguments) {
+    return switch (tool) {
+      case "jar" -> ofJar(arguments);
+      case "jlink" -> ofJlink(arguments);
+      default -> Optional.empty();
+    };
+  }
+
+  private static Optional<ArchiveStep> ofJar(List<String> arguments) {
+    Path output = null;
+    var inputs = new ArrayList<Path>();
+    for (var iterator = arguments.iterator(); iterator.hasNext(); ) {
+      var argument = iterator.next();
+      switch (argument) {
+        case "--file", "-f" -> output = Path.of(iterator.next());
+        case "-C" -> {
+          var directory = Path.of(iterator.next());
+          inputs.add(directory.resolve(iterator.next()).normalize());
+        }
+        case "--manifest", "-m" -> inputs.add(Path.of(iterator.next()));
+        case "--module-path", "-p" -> inputs.addAll(paths(iterator.next()));
+        case "--update", "-u" -> {
+          return Optional.empty(); // depends on the archive's previous content
+        }
+        default -> {
+          if (argument.startsWith("--file=")) output = Path.of(argument.substring(7));
+          else if (JAR_VALUES.contains(argument)) iterator.next();
+          else if (argument.startsWith("@")) return Optional.empty(); // unknown arguments
+          else if (!argument.startsWith("-")) inputs.add(Path.of(argument));
+        }
+      }
+    }
+    if (output == null) return Optional.empty();
+    return Optional.of(new ArchiveStep("jar", arguments, output, inputs));
+  }
+
+  private static Optional<ArchiveStep> ofJlink(List<String> arguments) {
+    Path output = null;
+    var inputs = new ArrayList<Path>();
+    for (var iterator = arguments.iterator(); iterator.hasNext(); ) {
+      var argument = iterator.next();
+      if (argument.equals("--output")) output = Path.of(iterator.next());
+      else if (argument.equals("--module-path") || argument.equals("-p")) {
+        inputs.addAll(paths(iterator.next()));
+      } else if (argument.startsWith("@")) return Optional.empty(); // unknown arguments
+    }
+    if (output == null) return Optional.empty();
+    return Optional.of(new ArchiveStep("jlink", arguments, output, inputs));
+  }
+
+  private static List<Path> paths(String value) {
+    return Set.of(value.split(File.pathSeparator)).stream().sorted().map(Path::of).toList();
+  }
+
+  public ArchiveStep {
+    arguments = List.copyOf(arguments);
+    inputs = List.copyOf(inputs);
+  }
+
+  /** {@return the fingerprint of this step, covering the current contents of all its inputs} */
+  public String fingerprint() {
+    var digest = Digest.sha256().add(tool).add(Runtime.version().toString());
+    arguments.forEach(digest::add);
+    for (var input : inputs) {
+      digest.add(input.toString().replace('\\', '/'));
+      if (Files.notExists(input)) digest.add("<missing>");
+      for (var file : files(input)) {
+        digest.add(input.relativize(file).toString().replace('\\', '/'));
+        var name = file.getFileName().toString();
+        if (name.endsWith(".jar") || name.endsWith(".jmod")) digest.addEntries(file);
+        else digest.addContent(file);
+      }
+    }
+    return digest.toHexString();
+  }
+
+  /** {@return the given file, or all regular files of the given directory sorted by path} */
+  private static List<Path> files(Path input) {
+    if (Files.isRegularFile(input)) return List.of(input);
+    if (!Files.isDirectory(input)) return List.of();
+    try (var stream = Files.walk(input)) {
+      return stream.filter(Files::isRegularFile).sorted().toList();
+    } catch (IOException exception) {
+      throw new UncheckedIOException("Walk %s failed".formatted(input), exception);
+    }
+  }
+}
@@ -0,0 +1,85 @@
+package run.workflow;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Records archiving steps, like jar and jlink calls, to skip those whose inputs didn't change.
+ *
+ * <p>Fingerprints of steps that completed successfully are stored in a manifest file, keyed by the
+ * path of their output. A step is up-to-date if its output exists and its current fingerprint
+ * equals the recorded one.
+ *
+ * <p>Steps may be deferred and run together later: each deferred step runs as soon as all steps
+ * deferred before it that write its inputs are done, several independent steps at the same time.
+ */
+public final class ArchiveSteps {
+  private final Fingerprints manifest;
+  private final Map<String, Deferred> deferred = new LinkedHashMap<>();
+
+  private record Deferred(ArchiveStep step, Runnable action) {}
+
+  public ArchiveSteps(Path manifest) {
+    this.manifest = Fingerprints.load(manifest);
+  }
+
+  /** {@return whether the output of the given step exists and was created from the same inputs} */
+  public boolean upToDate(ArchiveStep step, String fingerprint) {
+    if (Files.notExists(step.output())) return false;
+    return manifest.get(key(step)).map(fingerprint::equals).orElse(false);
+  }
+
+  /** Records the fingerprint of the given step, after it completed successfully. */
+  public void commit(ArchiveStep step, String fingerprint) {
+    manifest.put(key(step), fingerprint);
+    manifest.store();
+  }
+
+  /** Defers the action running the given step until the next {@link #flush(ModuleScheduler)}. */
+  public synchronized void defer(ArchiveStep step, Runnable action) {
+    var key = key(step);
+    if (deferred.containsKey(key)) flush(new ModuleScheduler(1)); // same output written twice
+    deferred.put(key, new Deferred(step, action));
+  }
+
+  /**
+   * Runs all deferred actions, each after all actions deferred before it that write its inputs.
+   *
+   * @param scheduler the scheduler running independent actions at the same time
+   */
+  public synchronized void flush(ModuleScheduler scheduler) {
+    if (deferred.isEmpty()) return;
+    var actions = List.copyOf(deferred.values());
+    deferred.clear();
+    var keys = actions.stream().map(action -> key(action.step())).toList();
+    var graph = ModuleGraph.of(keys, key -> producers(actions, keys.indexOf(key)));
+    scheduler.run(graph, key -> actions.get(keys.indexOf(key)).action().run());
+  }
+
+  private static Set<String> producers(List<Deferred> actions, int consumer) {
+    var step = actions.get(consumer).step();
+    return actions.subList(0, consumer).stream()
+        .map(Deferred::step)
+        .filter(producer -> reads(step, producer.output()))
+        .map(ArchiveSteps::key)
+        .collect(Collectors.toSet());
+  }
+
+  private static boolean reads(ArchiveStep step, Path output) {
+    var target = output.toAbsolutePath().normalize();
+    for (var input : step.inputs()) {
+      var source = input.toAbsolutePath().normalize();
+      if (source.startsWith(target) || target.startsWith(source)) return true;
+    }
+    return false;
+  }
+
+  private static String key(ArchiveStep step) {
+    return step.output().normalize().toString().replace('\\', '/');
+  }
+}
@@ -0,0 +1,273 @@
+package run.workflow;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A content-addressed cache of build step outputs, like class directories, JAR files and images.
+ *
+ * <p>Entries are keyed by a hash of all inputs of a step and stored in their own directory below
+ * the root directory of the cache. Each named output of a step is stored as a copy with read-only
+ * files, so that outputs restored as hard links can't modify cached content accidentally. Callers
+ * must delete restored outputs before writing them again. Entries are evicted in least recently
+ * used order when the total size of all entries exceeds the configured limit.
+ *
+ * <p>An optional remote cache is consulted on local misses and receives all locally stored entries.
+ * Entries are pushed in the background, a failing push is reported and doesn't fail the build.
+ */
+public final class BuildCache {
+  public static BuildCache of(Path root, long limit) {
+    return new BuildCache(root, limit, null);
+  }
+
+  public static BuildCache of(Path root, long limit, RemoteCache remote) {
+    return new BuildCache(root, limit, remote);
+  }
+
+  /** Hit and miss statistics of a build cache. */
+  public record Statistics(long hits, long misses, long stores, long evictions, long downloads) {
+    @Override
+    public String toString() {
+      return "%d hit%s (%d downloaded), %d miss%s, %d store%s, %d eviction%s"
+          .formatted(
+              hits, hits == 1 ? "" : "s",
+              downloads,
+              misses, misses == 1 ? "" : "es",
+              stores, stores == 1 ? "" : "s",
+              evictions, evictions == 1 ? "" : "s");
+    }
+  }
+
+  private static final String SIZE = "size";
+
+  private final Path root;
+  private final long limit;
+  private final boolean linkable;
+  private final RemoteCache remote;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong stores = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+  private final AtomicLong downloads = new AtomicLong();
+  private final List<Thread> pushes = new ArrayList<>();
+
+  private BuildCache(Path root, long limit, RemoteCache remote) {
+    this.root = root;
+    this.limit = limit;
+    this.remote = remote;
+    this.linkable = root.getFileSystem().supportedFileAttributeViews().contains("posix");
+  }
+
+  public Path root() {
+    return root;
+  }
+
+  public Statistics statistics() {
+    return new Statistics(
+        hits.get(), misses.get(), stores.get(), evictions.get(), downloads.get());
+  }
+
+  /**
+   * Restores the outputs of a cached step.
+   *
+   * @param key the hash of all inputs of the step
+   * @param outputs map of output names to target paths
+   * @return {@code true} if all outputs were restored, {@code false} on a cache miss
+   */
+  public boolean restore(String key, Map<String, Path> outputs) {
+    var event = new BuildEvents.CacheLookupEvent();
+    event.begin();
+    event.cache = "build";
+    event.key = key;
+    var entry = root.resolve(key);
+    if (!Files.isDirectory(entry) && remote != null) event.remote = download(key);
+    var complete = outputs.keySet().stream().allMatch(name -> Files.exists(entry.resolve(name)));
+    if (!Files.isDirectory(entry) || !complete) {
+      misses.incrementAndGet();
+      event.commit();
+      return false;
+    }
+    try {
+      for (var output : outputs.entrySet()) {
+        var target = output.getValue();
+        TreeDeleter.delete(target);
+        transfer(entry.resolve(output.getKey()), target, linkable);
+      }
+      Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+    } catch (IOException exception) {
+      throw new UncheckedIOException("Restore %s from cache failed".formatted(key), exception);
+    }
+    hits.incrementAndGet();
+    event.hit = true;
+    event.commit();
+    return true;
+  }
+
+  /**
+   * Stores the outputs of a step, unless an entry for the given key already exists.
+   *
+   * @param key the hash of all inputs of the step
+   * @param outputs map of output names to paths of files or directories
+   */
+  public void store(String key, Map<String, Path> outputs) {
+    var entry = root.resolve(key);
+    if (Files.isDirectory(entry)) return;
+    try {
+      Files.createDirectories(root);
+      var temporary = Files.createTempDirectory(root, ".store-");
+      for (var output : outputs.entrySet()) {
+        var source = output.getValue();
+        if (Files.exists(source)) transfer(source, temporary.resolve(output.getKey()), false);
+      }
+      if (!commit(temporary, entry)) return;
+    } catch (IOException exception) {
+      throw new UncheckedIOException("Store %s in cache failed".formatted(key), exception);
+    }
+    stores.incrementAndGet();
+    if (remote != null) push(key, entry);
+    evict();
+  }
+
+  /** Waits for all pushes to the remote cache started by this cache. */
+  public void awaitPushes() {
+    List<Thread> threads;
+    synchronized (pushes) {
+      threads = List.copyOf(pushes);
+      pushes.clear();
+    }
+    try {
+      for (var thread : threads) thread.join();
+    } catch (InterruptedException exception) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void push(String key, Path entry) {
+    // A non-daemon thread, a pending push completes before the JVM exits
+    var thread =
+        Thread.ofPlatform()
+            .name("cache-push-" + key)
+            .start(
+                () -> {
+                  try {
+                    remote.push(key, entry);
+                  } catch (RuntimeException exception) {
+                    System.err.printf("Push %s to remote cache failed: %s%n", key, exception);
+                  }
+                });
+    synchronized (pushes) {
+      pushes.removeIf(pushed -> !pushed.isAlive());
+      pushes.add(thread);
+    }
+  }
+
+  private boolean download(String key) {
+    try {
+      Files.createDirectories(root);
+      var temporary = Files.createTempDirectory(root, ".fetch-");
+      Files.delete(temporary);
+      var downloaded = remote.fetch(key, temporary) && commit(temporary, root.resolve(key));
+      if (downloaded) {
+        downloads.incrementAndGet();
+        evict();
+      }
+      TreeDeleter.delete(temporary);
+      return downloaded;
+    } catch (IOException exception) {
+      throw new UncheckedIOException("Download %s into cache failed".formatted(key), exception);
+    }
+  }
+
+  private boolean commit(Path temporary, Path entry) throws IOException {
+    Files.writeString(temporary.resolve(SIZE), Long.toString(size(temporary)));
+    if (linkable) protect(temporary);
+    try {
+      Files.move(temporary, entry, StandardCopyOption.ATOMIC_MOVE);
+      return true;
+    } catch (FileAlreadyExistsException | DirectoryNotEmptyException concurrentlyStored) {
+      TreeDeleter.delete(temporary);
+      return false;
+    }
+  }
+
+  private synchronized void evict() {
+    record Entry(Path path, long size, FileTime time) {}
+    var entries = new ArrayList<Entry>();
+    var total = 0L;
+    try (var stream = Files.list(root)) {
+      for (var path : stream.filter(Files::isDirectory).toList()) {
+        if (path.getFileName().toString().startsWith(".")) continue;
+        var file = path.resolve(SIZE);
+        if (!Files.isRegularFile(file)) continue;
+        var size = Long.parseLong(Files.readString(file).strip());
+        entries.add(new Entry(path, size, Files.getLastModifiedTime(path)));
+        total += size;
+      }
+      entries.sort(Comparator.comparing(Entry::time));
+      for (var entry : entries) {
+        if (total <= limit) break;
+        TreeDeleter.delete(entry.path());
+        total -= entry.size();
+        evictions.incrementAndGet();
+      }
+    } catch (IOException | RuntimeException exception) {
+      // eviction is best-effort, a concurrent build may have evicted entries already
+    }
+  }
+
+  private static void transfer(Path source, Path target, boolean link) throws IOException {
+    if (Files.isRegularFile(source)) {
+      Files.createDirectories(target.toAbsolutePath().getParent());
+      if (link) {
+        try {
+          Files.createLink(target, source);
+          return;
+        } catch (UnsupportedOperationException | IOException exception) {
+          // fall through and copy, for example when crossing file store boundaries
+        }
+      }
+      Files.copy(source, target, StandardCopyOption.COPY_ATTRIBUTES);
+      if (link) target.toFile().setWritable(true);
+      return;
+    }
+    for (var file : list(source)) {
+      var relative = source.relativize(file);
+      var path = target.resolve(relative.toString());
+      if (Files.isDirectory(file)) Files.createDirectories(path);
+      else transfer(file, path, link);
+    }
+  }
+
+  private static void protect(Path directory) throws IOException {
+    var readOnly = PosixFilePermissions.fromString("r--r--r--");
+    for (var file : list(directory)) {
+      if (!Files.isRegularFile(file)) continue;
+      Files.getFileAttributeView(file, PosixFileAttributeView.class).setPermissions(readOnly);
+    }
+  }
+
+  private static long size(Path directory) throws IOException {
+    var size = 0L;
+    for (var file : list(directory)) if (Files.isRegularFile(file)) size += Files.size(file);
+    return size;
+  }
+
+  private static List<Path> list(Path directory) throws IOException {
+    try (var stream = Files.walk(directory)) {
+      return stream.toList();
+    }
+  }
+}
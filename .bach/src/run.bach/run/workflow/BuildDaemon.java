@@ -0,0 +1,240 @@
+package run.workflow;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalInt;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.function.ToIntFunction;
+
+/**
+ * A long-lived JVM serving workflow invocations over a Unix-domain socket.
+ *
+ * <p>A client sends a stamp of the sources the daemon was started from, its relevant system
+ * properties, and the command line arguments. The daemon streams the output of the invocation back
+ * in frames and finishes with the exit code. A daemon receiving a different stamp replies "stale"
+ * and shuts down, causing the client to fall back to a regular invocation. A daemon not receiving
+ * any invocation within its idle timeout shuts down as well.
+ *
+ * <p>A daemon serves one invocation at a time, further clients wait until it's done. While serving
+ * an invocation, the standard output streams and the system properties of the daemon's JVM are
+ * replaced process-wide by the ones of the client, and restored afterwards. Invocations that loop
+ * or run for a long time should therefore not be sent to a daemon.
+ */
+public final class BuildDaemon {
+  public static final Path SOCKET = Path.of(".bach", "tmp", "daemon.socket");
+
+  private static final byte OUT = 1, ERR = 2, EXIT = 3, STALE = 4;
+  private static final List<String> SYSTEM_PROPERTY_PREFIXES =
+      List.of(
+          "file.", "java.", "jdk.", "line.", "native.", "os.", "path.", "stderr.", "stdout.",
+          "sun.", "user.");
+
+  /** {@return a fingerprint of all file paths, sizes, and modification times below the root} */
+  public static String stamp(Path root) {
+    var digest = Digest.sha256();
+    try (var stream = Files.walk(root)) {
+      for (var file : stream.filter(Files::isRegularFile).sorted().toList()) {
+        digest.add(file.toString()).add(Long.toString(Files.size(file)));
+        digest.add(Files.getLastModifiedTime(file).toString());
+      }
+    } catch (IOException exception) {
+      throw new UncheckedIOException("Stamp %s failed".formatted(root), exception);
+    }
+    return digest.toHexString();
+  }
+
+  /**
+   * Sends an invocation to a running daemon.
+   *
+   * @return the exit code, or an empty optional if no daemon is running or if it was stale
+   */
+  public static OptionalInt invoke(Path socket, String stamp, String... args) {
+    if (Files.notExists(socket)) return OptionalInt.empty();
+    try (var channel = SocketChannel.open(UnixDomainSocketAddress.of(socket))) {
+      var out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+      out.writeUTF(stamp);
+      var properties = forwardedSystemProperties();
+      out.writeInt(properties.size());
+      for (var entry : properties.entrySet()) {
+        out.writeUTF(entry.getKey());
+        out.writeUTF(entry.getValue());
+      }
+      out.writeInt(args.length);
+      for (var arg : args) out.writeUTF(arg);
+      out.flush();
+      var in = new DataInputStream(Channels.newInputStream(channel));
+      while (true) {
+        var type = in.readByte();
+        switch (type) {
+          case OUT, ERR -> {
+            var bytes = in.readNBytes(in.readInt());
+            (type == OUT ? System.out : System.err).write(bytes);
+          }
+          case EXIT -> {
+            System.out.flush();
+            return OptionalInt.of(in.readInt());
+          }
+          default -> {
+            return OptionalInt.empty();
+          }
+        }
+      }
+    } catch (IOException exception) {
+      return OptionalInt.empty(); // daemon not running anymore
+    }
+  }
+
+  /**
+   * Serves invocations one after another until stopped, idle, or a stale stamp is received.
+   *
+   * @param idle the time to wait for the next invocation before shutting down
+   */
+  public static void serve(
+      Path socket, String stamp, Duration idle, ToIntFunction<List<String>> handler)
+      throws IOException {
+    Files.createDirectories(socket.toAbsolutePath().getParent());
+    Files.deleteIfExists(socket);
+    try (var server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        var selector = Selector.open()) {
+      server.bind(UnixDomainSocketAddress.of(socket));
+      server.configureBlocking(false);
+      server.register(selector, SelectionKey.OP_ACCEPT);
+      System.out.println("Daemon listening on " + socket.toUri());
+      while (true) {
+        if (selector.select(idle.toMillis()) == 0) {
+          System.out.printf("Idle daemon stopped, no invocation within %s%n", idle);
+          return;
+        }
+        selector.selectedKeys().clear();
+        try (var channel = server.accept()) { // accepted channels are in blocking mode
+          if (channel == null) continue;
+          var in = new DataInputStream(Channels.newInputStream(channel));
+          var out =
+              new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+          var clientStamp = in.readUTF();
+          var properties = new TreeMap<String, String>();
+          for (int i = in.readInt(); i > 0; i--) properties.put(in.readUTF(), in.readUTF());
+          var args = new ArrayList<String>();
+          for (int i = in.readInt(); i > 0; i--) args.add(in.readUTF());
+          if (!clientStamp.equals(stamp)) {
+            out.writeByte(STALE);
+            out.flush();
+            System.out.println("Stale daemon stopped, sources changed");
+            return;
+          }
+          if (args.equals(List.of("stop"))) {
+            exit(out, 0);
+            System.out.println("Daemon stopped");
+            return;
+          }
+          exit(out, handle(out, properties, args, handler));
+        } catch (IOException exception) {
+          System.err.println("Invocation failed: " + exception);
+        }
+      }
+    } finally {
+      Files.deleteIfExists(socket);
+    }
+  }
+
+  private static int handle(
+      DataOutputStream out,
+      Map<String, String> properties,
+      List<String> args,
+      ToIntFunction<List<String>> handler) {
+    var systemOut = System.out;
+    var systemErr = System.err;
+    var systemProperties = (Properties) System.getProperties().clone();
+    try (var frameOut = new PrintStream(new FrameOutputStream(out, OUT), true);
+        var frameErr = new PrintStream(new FrameOutputStream(out, ERR), true)) {
+      System.setOut(frameOut);
+      System.setErr(frameErr);
+      properties.forEach(System::setProperty);
+      try {
+        return handler.applyAsInt(args);
+      } catch (RuntimeException exception) {
+        exception.printStackTrace(frameErr);
+        return 1;
+      }
+    } finally {
+      System.setOut(systemOut);
+      System.setErr(systemErr);
+      System.setProperties(systemProperties);
+    }
+  }
+
+  private static void exit(DataOutputStream out, int code) throws IOException {
+    out.writeByte(EXIT);
+    out.writeInt(code);
+    out.flush();
+  }
+
+  /** {@return all system properties except the ones provided by the Java runtime} */
+  public static Map<String, String> forwardedSystemProperties() {
+    var properties = new TreeMap<String, String>();
+    for (var name : System.getProperties().stringPropertyNames()) {
+      if (SYSTEM_PROPERTY_PREFIXES.stream().anyMatch(name::startsWith)) continue;
+      properties.put(name, System.getProperty(name));
+    }
+    return properties;
+  }
+
+  /** Writes bytes as typed frames, leaving the underlying stream open on close. */
+  private static final class FrameOutputStream extends OutputStream {
+    private final DataOutputStream out;
+    private final byte type;
+
+    FrameOutputStream(DataOutputStream out, byte type) {
+      this.out = out;
+      this.type = type;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+      if (length == 0) return;
+      synchronized (out) {
+        out.writeByte(type);
+        out.writeInt(length);
+        out.write(bytes, offset, length);
+      }
+    }
+
+    @Override
+    public void flush() throws IOException {
+      synchronized (out) {
+        out.flush();
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      flush();
+    }
+  }
+
+  private BuildDaemon() {}
+}
@@ -0,0 +1,132 @@
+package run.workflow;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Frequency;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Catalogue of JDK Flight Recorder events emitted while building.
+ *
+ * <p>All events are named {@code run.bach.*} and belong to the {@value #CATEGORY} category. Their
+ * durations are measured between {@link Event#begin()} and {@link Event#commit()}. Record them
+ * with {@code java -XX:StartFlightRecording:filename=build.jfr ...} and print them with {@code jfr
+ * print --categories Bach build.jfr}, or consume them in-process via a {@code RecordingStream}.
+ */
+public final class BuildEvents {
+  /** The category of all build events. */
+  public static final String CATEGORY = "Bach";
+
+  private BuildEvents() {}
+
+  /** A single run of a tool. */
+  @Name("run.bach.ToolCall")
+  @Category(CATEGORY)
+  @Label("Tool Call")
+  @StackTrace(false)
+  public static final class ToolCallEvent extends Event {
+    @Label("Tool")
+    public String tool;
+
+    @Label("Kind")
+    @Description("How the tool was run: runner, batch, compiler, worker, or process")
+    public String kind;
+
+    @Label("Arguments")
+    public int arguments;
+
+    @Label("Exit Code")
+    public int code;
+
+    @Label("Output")
+    @DataAmount
+    public long output;
+  }
+
+  /** A step of the build workflow, optionally bound to a space and a module. */
+  @Name("run.bach.WorkflowStep")
+  @Category(CATEGORY)
+  @Label("Workflow Step")
+  @StackTrace(false)
+  public static final class WorkflowStepEvent extends Event {
+    @Label("Step")
+    public String step;
+
+    @Label("Space")
+    public String space;
+
+    @Label("Module")
+    public String module;
+  }
+
+  /** A lookup of an entry in a cache or store. */
+  @Name("run.bach.CacheLookup")
+  @Category(CATEGORY)
+  @Label("Cache Lookup")
+  @StackTrace(false)
+  public static final class CacheLookupEvent extends Event {
+    @Label("Cache")
+    @Description("Name of the cache: build or store")
+    public String cache;
+
+    @Label("Key")
+    public String key;
+
+    @Label("Hit")
+    public boolean hit;
+
+    @Label("Remote")
+    @Description("The entry was fetched from a remote cache")
+    public boolean remote;
+  }
+
+  /** A download of a file. */
+  @Name("run.bach.Download")
+  @Category(CATEGORY)
+  @Label("Download")
+  @StackTrace(false)
+  public static final class DownloadEvent extends Event {
+    @Label("URI")
+    public String uri;
+
+    @Label("Size")
+    @DataAmount
+    public long bytes;
+
+    @Label("Throughput")
+    @DataAmount
+    @Frequency
+    public long throughput;
+
+    @Label("Status Code")
+    public int status;
+  }
+
+  /** An installation of tool files into a directory. */
+  @Name("run.bach.Install")
+  @Category(CATEGORY)
+  @Label("Install")
+  @StackTrace(false)
+  public static final class InstallEvent extends Event {
+    @Label("Directory")
+    public String directory;
+
+    @Label("Installed")
+    @Description("Files were installed, instead of found complete")
+    public boolean installed;
+  }
+
+  /** {@return a started workflow step event} */
+  public static WorkflowStepEvent step(String step, String space, String module) {
+    var event = new WorkflowStepEvent();
+    event.begin();
+    event.step = step;
+    event.space = space;
+    event.module = module;
+    return event;
+  }
+}
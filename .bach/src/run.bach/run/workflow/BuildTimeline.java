@@ -0,0 +1,270 @@
+package run.workflow;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.StringJoiner;
+import java.util.TreeMap;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingStream;
+
+/**
+ * A timeline of workflow steps and tool calls, recorded from {@link BuildEvents} while running an
+ * action.
+ *
+ * <p>The timeline is exported in Chrome's trace event format, viewable in {@code
+ * chrome://tracing} or Perfetto, and summarized by its critical path, its parallelism, and its
+ * slowest spans. The critical path is the chain of sequential, non-overlapping spans with the
+ * largest total duration: no schedule can finish faster than that chain. Spans of steps bound to
+ * modules of the same space are only chained along the edges of the module graph, all other spans
+ * are chained in time order.
+ *
+ * @param spans the recorded spans, sorted by start time
+ * @param graph the modules and the modules they require, used to chain module-bound steps
+ */
+public record BuildTimeline(List<Span> spans, ModuleGraph graph) {
+  private static final String THREAD_NAME =
+      """
+      {"name":"thread_name","ph":"M","pid":1,"tid":%d,"args":{"name":%s}}\
+      """;
+
+  private static final String COMPLETE =
+      """
+      {"name":%s,"cat":%s,"ph":"X","ts":%d,"dur":%d,"pid":1,"tid":%d,\
+      "args":{"space":%s,"module":%s}}\
+      """;
+
+  /** A timed span of work on a thread. */
+  public record Span(
+      String name,
+      String category,
+      String thread,
+      long threadId,
+      Instant start,
+      Duration duration,
+      String space,
+      String module) {
+    public Instant end() {
+      return start.plus(duration);
+    }
+
+    boolean contains(Span other) {
+      if (this == other || threadId != other.threadId) return false;
+      return !other.start.isBefore(start) && !other.end().isAfter(end());
+    }
+
+    @Override
+    public String toString() {
+      var where = space.isEmpty() ? "" : " " + space + (module.isEmpty() ? "" : "/" + module);
+      return "%6d ms  %s %s%s".formatted(duration.toMillis(), category, name, where);
+    }
+  }
+
+  public BuildTimeline {
+    spans = spans.stream().sorted(Comparator.comparing(Span::start)).toList();
+  }
+
+  public BuildTimeline(List<Span> spans) {
+    this(spans, new ModuleGraph(Map.of()));
+  }
+
+  /** {@return this timeline using the given module graph to chain module-bound steps} */
+  public BuildTimeline with(ModuleGraph graph) {
+    return new BuildTimeline(spans, graph);
+  }
+
+  /** {@return the timeline of all steps and tool calls emitted while running the action} */
+  public static BuildTimeline record(Runnable action) {
+    var spans = Collections.synchronizedList(new ArrayList<Span>());
+    try (var recording = new RecordingStream()) {
+      recording.enable("run.bach.WorkflowStep");
+      recording.enable("run.bach.ToolCall");
+      recording.onEvent("run.bach.WorkflowStep", event -> spans.add(step(event)));
+      recording.onEvent("run.bach.ToolCall", event -> spans.add(call(event)));
+      recording.startAsync();
+      try {
+        action.run();
+      } finally {
+        recording.stop(); // waits for all recorded events to be consumed
+      }
+    }
+    return new BuildTimeline(List.copyOf(spans));
+  }
+
+  private static Span step(RecordedEvent event) {
+    var space = event.getString("space");
+    var module = event.getString("module");
+    return span(event, event.getString("step"), "step", space, module);
+  }
+
+  private static Span call(RecordedEvent event) {
+    var name = event.getString("tool") + " (" + event.getString("kind") + ")";
+    return span(event, name, "tool", "", "");
+  }
+
+  private static Span span(
+      RecordedEvent event, String name, String category, String space, String module) {
+    var thread = event.getThread();
+    var threadName = thread == null ? "?" : thread.getJavaName();
+    var threadId = thread == null ? 0 : thread.getJavaThreadId();
+    var start = event.getStartTime();
+    var duration = event.getDuration();
+    return new Span(
+        name,
+        category,
+        threadName,
+        threadId,
+        start,
+        duration,
+        Objects.requireNonNullElse(space, ""),
+        Objects.requireNonNullElse(module, ""));
+  }
+
+  /** {@return the time from the first start to the last end of all spans} */
+  public Duration wallTime() {
+    if (spans.isEmpty()) return Duration.ZERO;
+    var end = spans.stream().map(Span::end).max(Comparator.naturalOrder()).orElseThrow();
+    return Duration.between(spans.getFirst().start(), end);
+  }
+
+  /** {@return spans not containing other spans of the same thread} */
+  public List<Span> leaves() {
+    return spans.stream().filter(span -> spans.stream().noneMatch(span::contains)).toList();
+  }
+
+  /** {@return the average number of leaf spans running at the same time} */
+  public double parallelism() {
+    var wall = wallTime().toNanos();
+    if (wall == 0) return 0;
+    return leaves().stream().mapToLong(span -> span.duration().toNanos()).sum() / (double) wall;
+  }
+
+  /** {@return module-bound spans and leaf spans outside of them, the links of all chains} */
+  List<Span> links() {
+    var modules = spans.stream().filter(span -> !span.module().isEmpty()).toList();
+    var links = new ArrayList<>(modules);
+    for (var leaf : leaves()) {
+      if (modules.stream().noneMatch(module -> module == leaf || module.contains(leaf))) {
+        links.add(leaf);
+      }
+    }
+    return links;
+  }
+
+  /** {@return {@code true} if the second span may follow the first one in a chain} */
+  boolean precedes(Span first, Span second) {
+    if (first.end().isAfter(second.start())) return false;
+    if (first.module().isEmpty() || second.module().isEmpty()) return true;
+    if (!first.space().equals(second.space())) return true; // spaces are built one after another
+    var modules = graph.modules();
+    if (!modules.contains(first.module()) || !modules.contains(second.module())) return true;
+    return graph.requires(second.module()).contains(first.module());
+  }
+
+  /** {@return the chain of non-overlapping spans with the largest total duration} */
+  public List<Span> criticalPath() {
+    var links = links().stream().sorted(Comparator.comparing(Span::end)).toList();
+    var size = links.size();
+    var best = new long[size]; // longest chain ending with link i
+    var previous = new int[size];
+    var last = -1;
+    for (int i = 0; i < size; i++) {
+      var link = links.get(i);
+      best[i] = link.duration().toNanos();
+      previous[i] = -1;
+      for (int j = 0; j < i; j++) {
+        if (!precedes(links.get(j), link)) continue;
+        var length = best[j] + link.duration().toNanos();
+        if (length > best[i]) {
+          best[i] = length;
+          previous[i] = j;
+        }
+      }
+      if (last < 0 || best[i] > best[last]) last = i;
+    }
+    var path = new ArrayList<Span>();
+    for (var i = last; i >= 0; i = previous[i]) path.add(links.get(i));
+    return path.reversed();
+  }
+
+  /** {@return the given number of slowest spans, slowest first} */
+  public List<Span> slowest(int limit) {
+    return spans.stream()
+        .sorted(Comparator.comparing(Span::duration).reversed())
+        .limit(limit)
+        .toList();
+  }
+
+  /** {@return a human-readable report of this timeline} */
+  public String toSummary(int limit) {
+    var processors = Runtime.getRuntime().availableProcessors();
+    var parallelism = parallelism();
+    var path = criticalPath();
+    var pathTime = path.stream().map(Span::duration).reduce(Duration.ZERO, Duration::plus);
+    var lines = new StringJoiner("\n");
+    lines.add("Wall time: %d ms, %d spans".formatted(wallTime().toMillis(), spans.size()));
+    lines.add(
+        "Parallelism: %.2f of %d processors (%.0f%% utilization)"
+            .formatted(parallelism, processors, 100 * parallelism / processors));
+    lines.add("Critical path: %d ms in %d spans".formatted(pathTime.toMillis(), path.size()));
+    path.forEach(span -> lines.add("  " + span));
+    lines.add("Slowest %d spans:".formatted(limit));
+    slowest(limit).forEach(span -> lines.add("  " + span));
+    return lines.toString();
+  }
+
+  /** {@return this timeline in Chrome's trace event JSON format} */
+  public String toChromeTrace() {
+    var events = new StringJoiner(",\n", "{\"traceEvents\":[\n", "\n]}\n");
+    var origin = spans.isEmpty() ? Instant.EPOCH : spans.getFirst().start();
+    var threads = new TreeMap<Long, String>();
+    for (var span : spans) threads.putIfAbsent(span.threadId(), span.thread());
+    threads.forEach((id, name) -> events.add(THREAD_NAME.formatted(id, json(name))));
+    for (var span : spans) {
+      var ts = Duration.between(origin, span.start()).toNanos() / 1000;
+      var dur = span.duration().toNanos() / 1000;
+      var name = json(span.name());
+      var category = json(span.category());
+      var space = json(span.space());
+      var module = json(span.module());
+      events.add(COMPLETE.formatted(name, category, ts, dur, span.threadId(), space, module));
+    }
+    return events.toString();
+  }
+
+  /** Writes this timeline in Chrome's trace event JSON format to the given file. */
+  public Path writeChromeTrace(Path file) {
+    try {
+      Files.createDirectories(file.toAbsolutePath().getParent());
+      return Files.writeString(file, toChromeTrace());
+    } catch (IOException exception) {
+      throw new UncheckedIOException("Write trace %s failed".formatted(file), exception);
+    }
+  }
+
+  private static String json(String string) {
+    var builder = new StringBuilder("\"");
+    for (var c : string.toCharArray()) {
+      switch (c) {
+        case '"' -> builder.append("\\\"");
+        case '\\' -> builder.append("\\\\");
+        case '\n' -> builder.append("\\n");
+        case '\t' -> builder.append("\\t");
+        default -> {
+          if (c < 0x20) builder.append("\\u%04x".formatted((int) c));
+          else builder.append(c);
+        }
+      }
+    }
+    return builder.append('"').toString();
+  }
+}
@@ -0,0 +1,157 @@
+package run.workflow;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+/**
+ * Creates and uses a dynamic AppCDS archive for a launcher of a runtime image.
+ *
+ * <p>The archive is created by a training run of the launcher's main class and stored as {@code
+ * lib/LAUNCHER.jsa} in the image. Launcher scripts generated by jlink are patched to use the
+ * archive. A missing or unusable archive is ignored by the JVM due to {@code -Xshare:auto}.
+ *
+ * <p>Trained archives are kept outside the image, keyed by a digest of the image's {@code
+ * lib/modules} file. A rebuilt image with unchanged modules reuses them instead of training again.
+ *
+ * @param image the root directory of the runtime image
+ * @param launcher the name of the launcher, as used for {@code bin/LAUNCHER}
+ * @param module the module and main class, as in {@code MODULE/MAIN-CLASS}
+ */
+public record ClassDataSharing(Path image, String launcher, String module) {
+  private static final Pattern MODULE = Pattern.compile("-m\\s+(\\S+)");
+
+  /** {@return class data sharing support, if the image contains a jlink-generated launcher} */
+  public static Optional<ClassDataSharing> of(Path image, String launcher) {
+    var script = image.resolve("bin").resolve(launcher);
+    if (!Files.isRegularFile(script)) return Optional.empty();
+    try {
+      var matcher = MODULE.matcher(Files.readString(script));
+      if (!matcher.find()) return Optional.empty();
+      return Optional.of(new ClassDataSharing(image, launcher, matcher.group(1)));
+    } catch (IOException exception) {
+      throw new UncheckedIOException("Read launcher %s failed".formatted(script), exception);
+    }
+  }
+
+  public Path archive() {
+    return image.resolve("lib").resolve(launcher + ".jsa");
+  }
+
+  /** {@return JVM options using the archive} */
+  public List<String> javaOptions() {
+    return List.of("-XX:SharedArchiveFile=" + archive(), "-Xshare:auto");
+  }
+
+  /** {@return the base archive of the image, required by dynamic archives} */
+  public Path baseArchive() {
+    return image.resolve("lib").resolve("server").resolve("classes.jsa");
+  }
+
+  /** {@return whether the image contains the archive and its launcher script uses it} */
+  public boolean trained() {
+    var script = image.resolve("bin").resolve(launcher);
+    if (!Files.isRegularFile(archive()) || !Files.isRegularFile(script)) return false;
+    try {
+      return Files.readString(script).contains("-XX:SharedArchiveFile=");
+    } catch (IOException exception) {
+      throw new UncheckedIOException("Read launcher %s failed".formatted(script), exception);
+    }
+  }
+
+  /**
+   * Trains the archive, unless archives for an image with the same modules are kept.
+   *
+   * @param archives the directory keeping trained archives
+   * @param args the arguments of the training run
+   * @return {@code true} if the archive was trained, {@code false} if it was reused
+   */
+  public boolean trainUnlessKept(Path archives, String... args) {
+    var digest = Digest.of(image.resolve("lib").resolve("modules"));
+    var kept = archives.resolve(launcher + "-" + digest);
+    try {
+      if (Files.isDirectory(kept)) {
+        if (Files.notExists(baseArchive())) copy(kept.resolve("classes.jsa"), baseArchive());
+        copy(kept.resolve(launcher + ".jsa"), archive());
+        patchLauncherScripts();
+        return false;
+      }
+      train(args);
+      patchLauncherScripts();
+      // Keep only the archives of the current modules
+      var prefix = launcher + "-";
+      TreeDeleter.prune(archives, path -> path.getFileName().toString().startsWith(prefix));
+      var temporary = Files.createTempDirectory(Files.createDirectories(archives), ".keep-");
+      copy(baseArchive(), temporary.resolve("classes.jsa"));
+      copy(archive(), temporary.resolve(launcher + ".jsa"));
+      Files.move(temporary, kept, StandardCopyOption.ATOMIC_MOVE);
+      return true;
+    } catch (IOException exception) {
+      throw new UncheckedIOException("Keep archives in %s failed".formatted(archives), exception);
+    }
+  }
+
+  /** Runs the launcher's main class with the given arguments and writes a dynamic archive. */
+  public void train(String... args) {
+    if (Files.notExists(baseArchive())) java("-Xshare:dump"); // dynamic archives need a base
+    var options = new ArrayList<String>();
+    options.add("-XX:ArchiveClassesAtExit=" + archive());
+    options.addAll(List.of("--module", module));
+    options.addAll(List.of(args));
+    java(options.toArray(String[]::new));
+  }
+
+  /** Patches the launcher scripts in the image's {@code bin} directory to use the archive. */
+  public void patchLauncherScripts() {
+    var bin = image.resolve("bin");
+    patch(bin.resolve(launcher), "$JLINK_VM_OPTIONS", "\"$DIR/../lib/%s.jsa\"");
+    patch(bin.resolve(launcher + ".bat"), "%JLINK_VM_OPTIONS%", "\"%%DIR%%\\..\\lib\\%s.jsa\"");
+  }
+
+  /** Runs the launcher's main class in the image's JVM using the archive. */
+  public void start(String... args) {
+    var options = new ArrayList<>(javaOptions());
+    options.addAll(List.of("--module", module));
+    options.addAll(List.of(args));
+    java(options.toArray(String[]::new));
+  }
+
+  private void patch(Path script, String variable, String archiveFormat) {
+    if (!Files.isRegularFile(script)) return;
+    try {
+      var text = Files.readString(script);
+      var option = "-XX:SharedArchiveFile=" + archiveFormat.formatted(launcher);
+      if (text.contains(option)) return;
+      Files.writeString(script, text.replace(variable, variable + " " + option + " -Xshare:auto"));
+    } catch (IOException exception) {
+      throw new UncheckedIOException("Patch launcher %s failed".formatted(script), exception);
+    }
+  }
+
+  private static void copy(Path source, Path target) throws IOException {
+    Files.createDirectories(target.toAbsolutePath().getParent());
+    Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  private void java(String... args) {
+    var command = new ArrayList<String>();
+    command.add(image.resolve("bin").resolve("java").toString());
+    command.addAll(List.of(args));
+    try {
+      var code = new ProcessBuilder(command).inheritIO().start().waitFor();
+      if (code == 0) return;
+      throw new RuntimeException("Non-zero exit code %d: %s".formatted(code, command));
+    } catch (IOException exception) {
+      throw new UncheckedIOException("Run %s failed".formatted(command), exception);
+    } catch (InterruptedException exception) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted: " + command, exception);
+    }
+  }
+}
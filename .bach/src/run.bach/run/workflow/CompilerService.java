@@ -0,0 +1,170 @@
+package run.workflow;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.Stream;
+import javax.tools.JavaCompiler;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import run.bach.ToolCall;
+
+/**
+ * An in-process javac service that keeps compiler classes and file managers warm across calls.
+ *
+ * <p>File manager options, like {@code -d} and {@code --module-path}, are applied once to a new
+ * file manager. Such a file manager is reused by all later calls with equal file manager options,
+ * keeping its opened archives and indexes of module path entries. File managers are not
+ * thread-safe, concurrent calls therefore use distinct instances from a pool of idle file managers.
+ * A pool is discarded when the size or the modification time of a file on one of its paths
+ * changes.
+ */
+public final class CompilerService {
+  private static final CompilerService SHARED = new CompilerService();
+
+  /** {@return the compiler service shared by all workflows of the current JVM} */
+  public static CompilerService shared() {
+    return SHARED;
+  }
+
+  private final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+  private final StandardJavaFileManager classifier = newFileManager();
+  private final Map<List<String>, Pool> pools = new ConcurrentHashMap<>();
+
+  private record Pool(String stamp, Queue<StandardJavaFileManager> idle) {}
+
+  private static final Set<String> PATH_OPTIONS =
+      Set.of(
+          "--module-path",
+          "-p",
+          "--class-path",
+          "-classpath",
+          "-cp",
+          "--processor-module-path",
+          "--processor-path",
+          "--upgrade-module-path");
+
+  private CompilerService() {}
+
+  /** Compiles as specified by the given javac tool call, throwing on errors. */
+  public void compile(ToolCall javac) {
+    var out = OutputCapture.ofDefaultLimit();
+    var writer = new PrintWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+    var event = new BuildEvents.ToolCallEvent();
+    event.begin();
+    var code = compile(javac.arguments(), writer);
+    writer.flush();
+    if (event.shouldCommit()) {
+      event.tool = "javac";
+      event.kind = "compiler";
+      event.arguments = javac.arguments().size();
+      event.code = code;
+      event.output = out.size();
+      event.commit();
+    }
+    var output = out.toString().strip();
+    if (!output.isEmpty()) (code == 0 ? System.out : System.err).println(output);
+    if (code != 0) throw new RuntimeException("javac failed with error code " + code);
+  }
+
+  /** {@return the error code of compiling with the given javac arguments} */
+  public int compile(List<String> arguments, PrintWriter out) {
+    var managerOptions = new ArrayList<String>();
+    var compilerOptions = new ArrayList<String>();
+    for (var iterator = arguments.iterator(); iterator.hasNext(); ) {
+      var option = iterator.next();
+      var count = classifier.isSupportedOption(option);
+      if (count < 0) {
+        compilerOptions.add(option);
+        continue;
+      }
+      managerOptions.add(option);
+      for (int i = 0; i < count; i++) managerOptions.add(iterator.next());
+    }
+    var pool = pool(managerOptions);
+    var fileManager = borrow(pool, managerOptions);
+    try {
+      var task = compiler.getTask(out, fileManager, null, compilerOptions, null, null);
+      return task.call() ? 0 : 1;
+    } catch (IllegalArgumentException | IllegalStateException exception) {
+      out.println(exception.getMessage());
+      return 2;
+    } finally {
+      giveBack(pool, managerOptions, fileManager);
+    }
+  }
+
+  private Pool pool(List<String> options) {
+    var stamp = stamp(options);
+    return pools.compute(
+        options,
+        (_, current) -> {
+          if (current != null && current.stamp().equals(stamp)) return current;
+          if (current != null) current.idle().forEach(CompilerService::close);
+          return new Pool(stamp, new ConcurrentLinkedQueue<>());
+        });
+  }
+
+  private StandardJavaFileManager borrow(Pool pool, List<String> options) {
+    var manager = pool.idle().poll();
+    if (manager != null) return manager;
+    manager = newFileManager();
+    for (var iterator = options.iterator(); iterator.hasNext(); ) {
+      manager.handleOption(iterator.next(), iterator);
+    }
+    return manager;
+  }
+
+  private static String stamp(List<String> options) {
+    var stamp = new StringJoiner(",");
+    for (int i = 0; i < options.size() - 1; i++) {
+      if (!PATH_OPTIONS.contains(options.get(i))) continue;
+      for (var entry : options.get(i + 1).split(File.pathSeparator)) {
+        var path = Path.of(entry);
+        try (var stream = Files.isDirectory(path) ? Files.list(path) : Stream.of(path)) {
+          for (var file : stream.filter(Files::isRegularFile).sorted().toList()) {
+            stamp.add(file + "=" + Files.size(file) + "@" + Files.getLastModifiedTime(file));
+          }
+        } catch (IOException exception) {
+          stamp.add(path + "=?");
+        }
+      }
+    }
+    return stamp.toString();
+  }
+
+  private StandardJavaFileManager newFileManager() {
+    return compiler.getStandardFileManager(null, null, StandardCharsets.UTF_8);
+  }
+
+  private void giveBack(Pool pool, List<String> options, StandardJavaFileManager manager) {
+    try {
+      manager.flush();
+    } catch (IOException exception) {
+      throw new UncheckedIOException("Flush file manager failed", exception);
+    }
+    if (pools.get(options) == pool) pool.idle().add(manager);
+    else close(manager);
+  }
+
+  private static void close(StandardJavaFileManager manager) {
+    try {
+      manager.close();
+    } catch (IOException exception) {
+      // ignore, the file manager is discarded anyway
+    }
+  }
+}
@@ -0,0 +1,91 @@
+package run.workflow;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/** A SHA-256 based message digest builder used to fingerprint build inputs. */
+public final class Digest {
+  public static Digest sha256() {
+    try {
+      return new Digest(MessageDigest.getInstance("SHA-256"));
+    } catch (NoSuchAlgorithmException exception) {
+      throw new AssertionError("SHA-256 not available?!", exception);
+    }
+  }
+
+  public static String of(Path file) {
+    return sha256().addContent(file).toHexString();
+  }
+
+  private final MessageDigest digest;
+  private final byte[] buffer = new byte[8192];
+
+  private Digest(MessageDigest digest) {
+    this.digest = digest;
+  }
+
+  public Digest add(String text) {
+    var bytes = text.getBytes(StandardCharsets.UTF_8);
+    digest.update(HexFormat.of().toHexDigits(bytes.length).getBytes(StandardCharsets.US_ASCII));
+    digest.update(bytes);
+    return this;
+  }
+
+  public Digest addContent(Path file) {
+    try (var stream = Files.newInputStream(file)) {
+      for (int read; (read = stream.read(buffer)) != -1; ) digest.update(buffer, 0, read);
+      return this;
+    } catch (IOException exception) {
+      throw new UncheckedIOException("Digest content of %s failed".formatted(file), exception);
+    }
+  }
+
+  /** {@return a stream adding all bytes read from the given stream to this digest} */
+  public InputStream digesting(InputStream stream) {
+    return new DigestInputStream(stream, digest);
+  }
+
+  /** Adds names and CRC-32 values of all entries of a ZIP file, ignoring their timestamps. */
+  public Digest addEntries(Path zip) {
+    try (var file = new ZipFile(zip.toFile())) {
+      file.stream()
+          .sorted(Comparator.comparing(ZipEntry::getName))
+          .forEach(entry -> add(entry.getName()).add(Long.toHexString(entry.getCrc())));
+      return this;
+    } catch (IOException exception) {
+      throw new UncheckedIOException("Digest entries of %s failed".formatted(zip), exception);
+    }
+  }
+
+  /** Adds relative names and contents of all regular files of a directory tree, sorted by name. */
+  public Digest addTree(Path directory) {
+    try (var stream = Files.walk(directory)) {
+      var files = new TreeMap<String, Path>();
+      for (var file : stream.filter(Files::isRegularFile).toList()) {
+        var name = directory.relativize(file).toString().replace(File.separatorChar, '/');
+        files.put(name, file);
+      }
+      files.forEach((name, file) -> add(name).addContent(file));
+      return this;
+    } catch (IOException exception) {
+      throw new UncheckedIOException("Digest tree of %s failed".formatted(directory), exception);
+    }
+  }
+
+  public String toHexString() {
+    return HexFormat.of().formatHex(digest.digest());
+  }
+}
@@ -0,0 +1,59 @@
+package run.workflow;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.Properties;
+
+/** A persistent manifest mapping names to fingerprints, stored as a properties file. */
+public final class Fingerprints {
+  public static Fingerprints load(Path file) {
+    var properties = new Properties();
+    if (Files.isRegularFile(file)) {
+      try (var reader = Files.newBufferedReader(file)) {
+        properties.load(reader);
+      } catch (IOException exception) {
+        // a corrupt manifest is treated like a missing one
+        properties.clear();
+      }
+    }
+    return new Fingerprints(file, properties);
+  }
+
+  private final Path file;
+  private final Properties properties;
+
+  private Fingerprints(Path file, Properties properties) {
+    this.file = file;
+    this.properties = properties;
+  }
+
+  public Path file() {
+    return file;
+  }
+
+  public synchronized Optional<String> get(String name) {
+    return Optional.ofNullable(properties.getProperty(name));
+  }
+
+  public synchronized void put(String name, String fingerprint) {
+    properties.setProperty(name, fingerprint);
+  }
+
+  public synchronized void remove(String name) {
+    properties.remove(name);
+  }
+
+  public synchronized void store() {
+    try {
+      Files.createDirectories(file.toAbsolutePath().getParent());
+      try (var writer = Files.newBufferedWriter(file)) {
+        properties.store(writer, null);
+      }
+    } catch (IOException exception) {
+      throw new UncheckedIOException("Store fingerprints in %s failed".formatted(file), exception);
+    }
+  }
+}
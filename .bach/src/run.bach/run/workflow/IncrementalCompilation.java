@@ -0,0 +1,138 @@
+package run.workflow;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import run.bach.ToolCall;
+
+/**
+ * Computes which modules of a multi-module javac call need to be compiled again.
+ *
+ * <p>A module's fingerprint covers the javac options including the {@code --release} value, the
+ * path and content of each of its source files, the content of all module path entries (JAR files
+ * by entry names and checksums), and the fingerprints of all required modules compiled by the same
+ * call. Fingerprints of successfully compiled modules are stored in a manifest file located in the
+ * class output directory.
+ */
+public final class IncrementalCompilation {
+  public static final String MANIFEST = "fingerprints.properties";
+
+  public static IncrementalCompilation of(ToolCall javac) {
+    var call = JavacCall.of(javac);
+    var manifest = Fingerprints.load(call.destination().resolve(MANIFEST));
+    return new IncrementalCompilation(call, manifest);
+  }
+
+  private final JavacCall javac;
+  private final Fingerprints manifest;
+  private final Map<String, ModuleDeclaration> declarations = new HashMap<>();
+  private final Map<String, String> fingerprints = new HashMap<>();
+  private String upstream;
+
+  private IncrementalCompilation(JavacCall javac, Fingerprints manifest) {
+    this.javac = javac;
+    this.manifest = manifest;
+  }
+
+  public JavacCall javac() {
+    return javac;
+  }
+
+  /** {@return the names of modules that require compilation, in javac's module order} */
+  public Set<String> affected() {
+    var affected = new LinkedHashSet<String>();
+    for (var module : javac.modules()) {
+      var fingerprint = fingerprint(module);
+      var recorded = manifest.get(module).orElse("");
+      if (!recorded.equals(fingerprint) || Files.notExists(javac.destination(module))) {
+        affected.add(module);
+      }
+    }
+    return affected;
+  }
+
+  /** {@return the names of modules compiled by this call that the given module requires} */
+  public Set<String> requires(String module) {
+    var requires = new TreeSet<>(declaration(module).requires());
+    requires.retainAll(javac.modules());
+    return requires;
+  }
+
+  /** {@return the graph of the given modules and the modules they require among them} */
+  public ModuleGraph graph(Collection<String> modules) {
+    return ModuleGraph.of(modules, this::requires);
+  }
+
+  /** {@return the fingerprint of the given module} */
+  public synchronized String fingerprint(String module) {
+    var fingerprint = fingerprints.get(module);
+    if (fingerprint != null) return fingerprint;
+    var digest = Digest.sha256();
+    javac.options().forEach(digest::add);
+    digest.add(javac.release().orElse("")).add(upstream());
+    for (var file : javac.findSourceFiles(module)) {
+      digest.add(file.toString().replace('\\', '/')).addContent(file);
+    }
+    for (var required : requires(module)) digest.add(required).add(fingerprint(required));
+    fingerprint = digest.toHexString();
+    fingerprints.put(module, fingerprint);
+    return fingerprint;
+  }
+
+  /** {@return the build cache key of the given module's class files} */
+  public String cacheKey(String module) {
+    var javac = "javac@" + Runtime.version();
+    return Digest.sha256().add(javac).add(fingerprint(module)).toHexString();
+  }
+
+  /** Deletes class files of the given modules to prevent stale classes from surviving. */
+  public void clean(Collection<String> modules) {
+    for (var module : modules) {
+      manifest.remove(module);
+      TreeDeleter.delete(javac.destination(module));
+    }
+  }
+
+  /** Records the current fingerprints of the given, successfully compiled, modules. */
+  public void commit(Collection<String> modules) {
+    for (var module : modules) manifest.put(module, fingerprint(module));
+    manifest.store();
+  }
+
+  private ModuleDeclaration declaration(String module) {
+    return declarations.computeIfAbsent(
+        module,
+        name -> javac.findModuleDeclaration(name).orElse(new ModuleDeclaration(name, Set.of())));
+  }
+
+  private String upstream() {
+    if (upstream != null) return upstream;
+    var digest = Digest.sha256();
+    for (var entry : javac.modulePath()) {
+      for (var file : listFiles(entry)) {
+        digest.add(file.toString());
+        if (file.toString().endsWith(".jar")) digest.addEntries(file);
+        else digest.addContent(file);
+      }
+    }
+    return upstream = digest.toHexString();
+  }
+
+  private static List<Path> listFiles(Path entry) {
+    if (Files.isRegularFile(entry)) return List.of(entry);
+    if (!Files.isDirectory(entry)) return List.of();
+    try (var stream = Files.walk(entry)) {
+      return stream.filter(Files::isRegularFile).sorted().toList();
+    } catch (IOException exception) {
+      throw new UncheckedIOException("List files of %s failed".formatted(entry), exception);
+    }
+  }
+}
@@ -0,0 +1,236 @@
+package run.workflow;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.lang.module.ModuleFinder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.ServiceLoader;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.spi.ToolProvider;
+import run.bach.Tool;
+import run.bach.ToolFinder;
+
+/**
+ * A tool finder that indexes tools by name, by namespace and name, and with their versions.
+ *
+ * <p>The index is built once, on first use. Lookups are answered from the index, and results,
+ * including negative ones, are cached. The first tool found for a key wins, like in a composed
+ * finder walking its components in order.
+ *
+ * <p>A finder of a directory of modular JAR files records the names of all tool providers per JAR
+ * file in an index file, keyed by file size and modification time. Later runs read tool names from
+ * that file and only load modules and instantiate a provider when the tool is run.
+ *
+ * <p>Indexing is opt-in: wrap a finder where it's asked for many tools, as the tool versions demo
+ * does. The tool finders composed for a project by the run.bach module are used as they are.
+ */
+public final class IndexedToolFinder implements ToolFinder {
+  /** {@return an indexed view of the tools of the given finder} */
+  public static IndexedToolFinder of(ToolFinder finder) {
+    return new IndexedToolFinder(finder::tools);
+  }
+
+  /**
+   * {@return a finder of tool providers in modular JAR files of a directory}
+   *
+   * @param directory the directory containing modular JAR files
+   * @param index the file storing tool names per JAR file
+   */
+  public static IndexedToolFinder ofModulePath(Path directory, Path index) {
+    return new IndexedToolFinder(() -> new ModulePathTools(directory, index).tools());
+  }
+
+  private final Supplier<List<Tool>> supplier;
+  private final Map<String, Optional<Tool>> lookups = new ConcurrentHashMap<>();
+  private volatile List<Tool> tools;
+  private volatile Map<String, Tool> index;
+
+  private IndexedToolFinder(Supplier<List<Tool>> supplier) {
+    this.supplier = supplier;
+  }
+
+  @Override
+  public List<Tool> tools() {
+    var tools = this.tools;
+    if (tools != null) return tools;
+    synchronized (this) {
+      if (this.tools == null) this.tools = List.copyOf(supplier.get());
+      return this.tools;
+    }
+  }
+
+  @Override
+  public Optional<Tool> find(String string) {
+    return lookups.computeIfAbsent(string, key -> Optional.ofNullable(index().get(key)));
+  }
+
+  private Map<String, Tool> index() {
+    var index = this.index;
+    if (index != null) return index;
+    synchronized (this) {
+      if (this.index != null) return this.index;
+      var map = new HashMap<String, Tool>();
+      for (var tool : tools()) {
+        var id = tool.identifier().toNamespaceAndNameAndVersion();
+        for (var key : keys(id, tool.identifier().name())) map.putIfAbsent(key, tool);
+      }
+      return this.index = Map.copyOf(map);
+    }
+  }
+
+  /** {@return name, name@version, namespace/name, and namespace/name@version keys} */
+  static List<String> keys(String id, String name) {
+    var keys = new ArrayList<String>();
+    keys.add(name);
+    var at = id.lastIndexOf('@');
+    if (at >= 0) keys.add(name + id.substring(at));
+    keys.add(at < 0 ? id : id.substring(0, at));
+    keys.add(id);
+    return keys;
+  }
+
+  /** Reads and writes the tool names of modular JAR files in a directory. */
+  private record ModulePathTools(Path directory, Path index) {
+    List<Tool> tools() {
+      var recorded = load();
+      var layer = new Layer(directory);
+      var current = new TreeMap<String, String>();
+      try (var stream = Files.newDirectoryStream(directory, "*.jar")) {
+        for (var jar : stream) {
+          var key = jar.getFileName().toString();
+          var stamp = Files.size(jar) + " " + Files.getLastModifiedTime(jar).toMillis();
+          var entry = recorded.getProperty(key, "");
+          current.put(key, entry.startsWith(stamp + " ") ? entry : stamp + " " + scan(jar, layer));
+        }
+      } catch (IOException exception) {
+        throw new UncheckedIOException("Index tools in %s failed".formatted(directory), exception);
+      }
+      if (!current.equals(new TreeMap<>(recorded))) store(current);
+      var tools = new ArrayList<Tool>();
+      for (var entry : current.values()) {
+        var values = entry.split(" ");
+        for (int i = 4; i < values.length; i++) {
+          var nameAndType = values[i].split("=", 2);
+          var version = values[3].equals("-") ? "" : "@" + values[3];
+          var provider = new LazyToolProvider(nameAndType[0], nameAndType[1], layer);
+          tools.add(Tool.of(values[2] + "/" + nameAndType[0] + version, provider));
+        }
+      }
+      return tools;
+    }
+
+    /** {@return module name, version, and NAME=TYPE entries of all tool providers of the JAR} */
+    private static String scan(Path jar, Layer layer) {
+      var module = ModuleFinder.of(jar).findAll().iterator().next().descriptor();
+      var version = module.rawVersion().orElse("-");
+      var entries = new StringBuilder(module.name() + " " + version);
+      var provides = module.provides().stream();
+      if (provides.noneMatch(it -> it.service().equals(ToolProvider.class.getName()))) {
+        return entries.toString();
+      }
+      for (var provider : ServiceLoader.load(layer.get(), ToolProvider.class).stream().toList()) {
+        if (!provider.type().getModule().getName().equals(module.name())) continue;
+        var name = provider.get().name();
+        entries.append(' ').append(name).append('=').append(provider.type().getName());
+      }
+      return entries.toString();
+    }
+
+    private Properties load() {
+      var properties = new Properties();
+      if (Files.notExists(index)) return properties;
+      try (var reader = Files.newBufferedReader(index)) {
+        properties.load(reader);
+      } catch (IOException exception) {
+        properties.clear(); // rebuild a broken index
+      }
+      return properties;
+    }
+
+    private void store(Map<String, String> entries) {
+      var properties = new Properties();
+      properties.putAll(entries);
+      try {
+        Files.createDirectories(index.toAbsolutePath().getParent());
+        var temporary = Files.createTempFile(index.toAbsolutePath().getParent(), ".tools-", "");
+        try (var writer = Files.newBufferedWriter(temporary)) {
+          properties.store(writer, "Tools of " + directory);
+        }
+        Files.move(temporary, index, StandardCopyOption.REPLACE_EXISTING);
+      } catch (IOException exception) {
+        // an index is an optimization, its absence only costs time
+      }
+    }
+  }
+
+  /** A module layer of all modules found at a path, created on first use. */
+  private static final class Layer implements Supplier<ModuleLayer> {
+    private final Path path;
+    private volatile ModuleLayer layer;
+
+    private Layer(Path path) {
+      this.path = path;
+    }
+
+    @Override
+    public ModuleLayer get() {
+      var layer = this.layer;
+      if (layer != null) return layer;
+      synchronized (this) {
+        if (this.layer != null) return this.layer;
+        var finder = ModuleFinder.of(path);
+        var roots = finder.findAll().stream().map(ref -> ref.descriptor().name()).toList();
+        var boot = ModuleLayer.boot();
+        var configuration = boot.configuration().resolveAndBind(finder, ModuleFinder.of(), roots);
+        var loader = ClassLoader.getSystemClassLoader();
+        return this.layer = boot.defineModulesWithOneLoader(configuration, loader);
+      }
+    }
+  }
+
+  /** A tool provider with a known name, instantiated on first run. */
+  private static final class LazyToolProvider implements ToolProvider {
+    private final String name;
+    private final String type;
+    private final Supplier<ModuleLayer> layer;
+    private volatile ToolProvider provider;
+
+    private LazyToolProvider(String name, String type, Supplier<ModuleLayer> layer) {
+      this.name = name;
+      this.type = type;
+      this.layer = layer;
+    }
+
+    @Override
+    public String name() {
+      return name;
+    }
+
+    @Override
+    public int run(PrintWriter out, PrintWriter err, String... args) {
+      return provider().run(out, err, args);
+    }
+
+    private ToolProvider provider() {
+      var provider = this.provider;
+      if (provider != null) return provider;
+      return this.provider =
+          ServiceLoader.load(layer.get(), ToolProvider.class).stream()
+              .filter(candidate -> candidate.type().getName().equals(type))
+              .map(ServiceLoader.Provider::get)
+              .findFirst()
+              .orElseThrow(() -> new IllegalStateException("Provider not found: " + type));
+    }
+  }
+}
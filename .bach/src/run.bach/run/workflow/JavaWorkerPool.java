@@ -0,0 +1,429 @@
+package run.workflow;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.jar.JarFile;
+import java.util.spi.ToolProvider;
+
+/**
+ * A pool of long-lived JVMs running a Java application's tool provider.
+ *
+ * <p>Each worker JVM launches an embedded worker program with the application's JAR file on the
+ * class path, or with its modules on the module path, loads the tool provider once, and then runs
+ * invocations read from its standard input stream. Output is sent back as typed frames on its
+ * standard output stream. A worker is retired after {@code maxCalls} invocations or when its heap
+ * usage after the most recent garbage collection exceeds {@code maxMemory} bytes. Applications
+ * without a matching tool provider are run in a fresh JVM for each call, like via {@code java
+ * -jar}, as before. If a worker can't be started, calls are run in fresh JVMs for a back-off period
+ * that doubles with each further failure, before starting a worker is tried again. Add and open
+ * directives of the JAR file's manifest are passed to the worker JVMs.
+ */
+public final class JavaWorkerPool {
+  private static final Map<List<String>, JavaWorkerPool> SHARED = new ConcurrentHashMap<>();
+  private static final byte READY = 0, OUT = 1, ERR = 2, EXIT = 3;
+  private static final long MIN_BACKOFF = 1_000_000_000L, MAX_BACKOFF = 300_000_000_000L;
+
+  /** {@return whether java-based tools should run in worker JVMs, enabled via {@code -Dworkers}} */
+  public static boolean enabled() {
+    return Boolean.getBoolean("-Dworkers".substring(2));
+  }
+
+  /** {@return a tool provider running the named tool of the given JAR file in shared workers} */
+  public static ToolProvider provider(String name, Path jar) {
+    var key = List.of(name, jar.toAbsolutePath().toString());
+    var processors = Runtime.getRuntime().availableProcessors();
+    var size = Integer.getInteger("-Dworkers.size".substring(2), Math.max(1, processors / 2));
+    return SHARED.computeIfAbsent(key, _ -> new JavaWorkerPool(name, jar, size, calls(), memory()))
+        .provider();
+  }
+
+  /**
+   * {@return a pool of workers running the named tool provider of modules on the module path}
+   *
+   * <p>All modules of the module path are resolved in each worker JVM. Invocations of a worker
+   * share its JVM until the worker is retired, as configured via {@code -Dworkers.calls} and
+   * {@code -Dworkers.memory}.
+   *
+   * @param name the name of the tool provider
+   * @param modulePath directories and modular JAR files
+   * @param main the module and main class to run in a fresh JVM, as in {@code MODULE/MAIN-CLASS}
+   * @param size the maximum number of worker JVMs
+   */
+  public static JavaWorkerPool ofModulePath(
+      String name, List<Path> modulePath, String main, int size) {
+    var path = new StringJoiner(File.pathSeparator);
+    modulePath.forEach(element -> path.add(element.toAbsolutePath().toString()));
+    var resolve = List.of("--module-path", path.toString(), "--add-modules", "ALL-MODULE-PATH");
+    var fork = new ArrayList<>(resolve);
+    fork.addAll(List.of("--module", main));
+    return new JavaWorkerPool(name, resolve, fork, size, calls(), memory());
+  }
+
+  private static int calls() {
+    return Integer.getInteger("-Dworkers.calls".substring(2), 100);
+  }
+
+  private static long memory() {
+    return Long.getLong("-Dworkers.memory".substring(2), 256L << 20);
+  }
+
+  private final String name;
+  private final List<String> workerOptions;
+  private final List<String> forkOptions;
+  private final int maxCalls;
+  private final long maxMemory;
+  private final Semaphore permits;
+  private final Queue<Worker> idle = new ConcurrentLinkedQueue<>();
+  private long backoff; // nanoseconds, zero while workers start successfully
+  private long retryAt; // value of System.nanoTime() after which starting a worker is retried
+
+  public JavaWorkerPool(String name, Path jar, int size, int maxCalls, long maxMemory) {
+    this(
+        name,
+        workerOptions(jar.toAbsolutePath()),
+        List.of("-jar", jar.toAbsolutePath().toString()),
+        size,
+        maxCalls,
+        maxMemory);
+  }
+
+  private JavaWorkerPool(
+      String name,
+      List<String> workerOptions,
+      List<String> forkOptions,
+      int size,
+      int maxCalls,
+      long maxMemory) {
+    this.name = name;
+    this.workerOptions = List.copyOf(workerOptions);
+    this.forkOptions = List.copyOf(forkOptions);
+    this.maxCalls = maxCalls;
+    this.maxMemory = maxMemory;
+    this.permits = new Semaphore(size);
+  }
+
+  /** {@return a tool provider dispatching each invocation to an idle worker} */
+  public ToolProvider provider() {
+    return new ToolProvider() {
+      @Override
+      public String name() {
+        return name;
+      }
+
+      @Override
+      public int run(PrintWriter out, PrintWriter err, String... args) {
+        return JavaWorkerPool.this.run(out, err, args);
+      }
+    };
+  }
+
+  /** Stops all idle workers. */
+  public void close() {
+    for (var worker = idle.poll(); worker != null; worker = idle.poll()) worker.close();
+  }
+
+  int run(PrintWriter out, PrintWriter err, String... args) {
+    var event = new BuildEvents.ToolCallEvent();
+    event.begin();
+    var kind = backingOff() ? "process" : "worker";
+    var code = dispatch(out, err, args);
+    if (event.shouldCommit()) {
+      event.tool = name;
+      event.kind = kind;
+      event.arguments = args.length;
+      event.code = code;
+      event.commit();
+    }
+    return code;
+  }
+
+  private synchronized boolean backingOff() {
+    return backoff > 0 && System.nanoTime() - retryAt < 0;
+  }
+
+  private synchronized void started(boolean success) {
+    backoff = success ? 0 : Math.min(MAX_BACKOFF, Math.max(MIN_BACKOFF, backoff * 2));
+    retryAt = System.nanoTime() + backoff;
+  }
+
+  private int dispatch(PrintWriter out, PrintWriter err, String... args) {
+    if (backingOff()) return fork(out, err, args);
+    permits.acquireUninterruptibly();
+    try {
+      var worker = idle.poll();
+      if (worker == null) worker = start();
+      if (worker == null) return fork(out, err, args);
+      try {
+        var outcome = worker.call(out, err, args);
+        if (++worker.calls < maxCalls && outcome.memory() < maxMemory) idle.add(worker);
+        else worker.close();
+        return outcome.code();
+      } catch (IOException exception) {
+        worker.close();
+        err.println("Worker of %s failed: %s".formatted(name, exception));
+        return 1;
+      }
+    } finally {
+      permits.release();
+    }
+  }
+
+  private Worker start() {
+    var command = new ArrayList<String>();
+    command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+    command.addAll(workerOptions);
+    command.addAll(List.of(WorkerSource.FILE.toString(), name));
+    try {
+      var builder = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT);
+      var worker = new Worker(builder.start());
+      if (worker.input.readByte() == READY && worker.input.readBoolean()) {
+        started(true);
+        return worker;
+      }
+      worker.close();
+    } catch (IOException exception) {
+      // fall through and run without workers for a while
+    }
+    started(false);
+    return null;
+  }
+
+  /** {@return the class path and the add and open directives of the JAR file's manifest} */
+  private static List<String> workerOptions(Path jar) {
+    var options = new ArrayList<String>();
+    try (var file = new JarFile(jar.toFile())) {
+      var manifest = file.getManifest();
+      options.addAll(List.of("--class-path", jar.toString()));
+      if (manifest == null) return options;
+      var attributes = manifest.getMainAttributes();
+      for (var directive : List.of("Add-Exports", "Add-Opens")) {
+        var value = attributes.getValue(directive);
+        if (value == null) continue;
+        var option = "--" + directive.toLowerCase();
+        for (var target : value.trim().split("\\s+")) {
+          options.add(option + "=" + target + "=ALL-UNNAMED");
+        }
+      }
+      return options;
+    } catch (IOException exception) {
+      throw new UncheckedIOException("Read manifest of %s failed".formatted(jar), exception);
+    }
+  }
+
+  private int fork(PrintWriter out, PrintWriter err, String... args) {
+    var command = new ArrayList<String>();
+    command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+    command.addAll(forkOptions);
+    command.addAll(List.of(args));
+    try {
+      var process = new ProcessBuilder(command).start();
+      process.getOutputStream().close();
+      var errors = new ByteArrayOutputStream();
+      var stderr = process.getErrorStream();
+      var pump = Thread.ofVirtual().start(() -> OutputCapture.transfer(stderr, errors));
+      out.print(new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8));
+      out.flush();
+      var code = process.waitFor();
+      pump.join();
+      err.print(errors.toString(StandardCharsets.UTF_8));
+      err.flush();
+      return code;
+    } catch (IOException exception) {
+      err.println("Run %s failed: %s".formatted(command, exception));
+      return 1;
+    } catch (InterruptedException exception) {
+      Thread.currentThread().interrupt();
+      return 1;
+    }
+  }
+
+  private record Outcome(int code, long memory) {}
+
+  private static final class Worker {
+    private final Process process;
+    private final DataInputStream input;
+    private final DataOutputStream output;
+    private int calls;
+
+    private Worker(Process process) {
+      this.process = process;
+      this.input = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+      this.output = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+    }
+
+    /** Runs an invocation and returns its exit code and the heap usage after the last GC. */
+    Outcome call(PrintWriter out, PrintWriter err, String... args) throws IOException {
+      output.writeInt(args.length);
+      for (var arg : args) output.writeUTF(arg);
+      output.flush();
+      var pendingOut = new ByteArrayOutputStream();
+      var pendingErr = new ByteArrayOutputStream();
+      while (true) {
+        var type = input.readByte();
+        if (type == EXIT) {
+          var outcome = new Outcome(input.readInt(), input.readLong());
+          out.print(pendingOut.toString(StandardCharsets.UTF_8));
+          err.print(pendingErr.toString(StandardCharsets.UTF_8));
+          out.flush();
+          err.flush();
+          return outcome;
+        }
+        var bytes = input.readNBytes(input.readInt());
+        if (type == OUT) print(out, pendingOut, bytes);
+        else if (type == ERR) print(err, pendingErr, bytes);
+        else throw new IOException("Unexpected frame type: " + type);
+      }
+    }
+
+    /** Prints complete UTF-8 sequences and keeps a trailing incomplete sequence pending. */
+    private static void print(PrintWriter writer, ByteArrayOutputStream pending, byte[] bytes) {
+      pending.write(bytes, 0, bytes.length);
+      var buffer = pending.toByteArray();
+      var end = buffer.length;
+      for (int i = buffer.length - 1; i >= 0 && i >= buffer.length - 3; i--) {
+        var b = buffer[i] & 0xFF;
+        if (b < 0x80) break; // ASCII, complete
+        if (b >= 0xC0) { // lead byte: complete if all continuation bytes are present
+          var length = b >= 0xF0 ? 4 : b >= 0xE0 ? 3 : 2;
+          if (buffer.length - i < length) end = i;
+          break;
+        }
+      }
+      writer.print(new String(buffer, 0, end, StandardCharsets.UTF_8));
+      writer.flush();
+      pending.reset();
+      pending.write(buffer, end, buffer.length - end);
+    }
+
+    void close() {
+      try {
+        output.close(); // worker exits on end of its input stream
+      } catch (IOException exception) {
+        process.destroy();
+      }
+    }
+  }
+
+  /** The worker program, stored once per JVM in a temporary file and launched in source mode. */
+  private static final class WorkerSource {
+    static final Path FILE = store();
+
+    private static Path store() {
+      var text = // language=java
+          """
+          import java.io.*;
+          import java.lang.management.*;
+          import java.nio.charset.StandardCharsets;
+          import java.util.*;
+          import java.util.spi.ToolProvider;
+
+          class Worker {
+            static final byte READY = 0, OUT = 1, ERR = 2, EXIT = 3;
+            static final DataOutputStream FRAMES =
+                new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)));
+
+            record Frames(byte type) {
+              PrintStream stream() {
+                return new PrintStream(new OutputStream() {
+                  public void write(int b) throws IOException {
+                    write(new byte[] {(byte) b}, 0, 1);
+                  }
+                  public void write(byte[] bytes, int offset, int length) throws IOException {
+                    synchronized (FRAMES) {
+                      FRAMES.writeByte(type);
+                      FRAMES.writeInt(length);
+                      FRAMES.write(bytes, offset, length);
+                    }
+                  }
+                }, true, StandardCharsets.UTF_8);
+              }
+            }
+
+            public static void main(String... args) throws Exception {
+              var stdin = new BufferedInputStream(new FileInputStream(FileDescriptor.in));
+              var in = new DataInputStream(stdin);
+              var out = new Frames(OUT).stream();
+              var err = new Frames(ERR).stream();
+              System.setOut(out);
+              System.setErr(err);
+              var provider = ServiceLoader.load(ToolProvider.class).stream()
+                  .map(ServiceLoader.Provider::get)
+                  .filter(tool -> tool.name().equals(args[0]))
+                  .findFirst();
+              synchronized (FRAMES) {
+                FRAMES.writeByte(READY);
+                FRAMES.writeBoolean(provider.isPresent());
+                FRAMES.flush();
+              }
+              if (provider.isEmpty()) return;
+              var tool = provider.get();
+              while (true) {
+                int count;
+                try {
+                  count = in.readInt();
+                } catch (EOFException exception) {
+                  return;
+                }
+                var arguments = new String[count];
+                for (int i = 0; i < count; i++) arguments[i] = in.readUTF();
+                int code;
+                try {
+                  code = tool.run(out, err, arguments);
+                } catch (Throwable throwable) {
+                  throwable.printStackTrace(err);
+                  code = 1;
+                }
+                out.flush();
+                err.flush();
+                synchronized (FRAMES) {
+                  FRAMES.writeByte(EXIT);
+                  FRAMES.writeInt(code);
+                  FRAMES.writeLong(heapUsedAfterLastCollection());
+                  FRAMES.flush();
+                }
+              }
+            }
+
+            // live data retained by the tool, unlike used heap that includes uncollected garbage
+            static long heapUsedAfterLastCollection() {
+              var used = 0L;
+              for (var pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() != MemoryType.HEAP) continue;
+                var usage = pool.getCollectionUsage();
+                if (usage != null) used += usage.getUsed();
+              }
+              return used;
+            }
+          }
+          """;
+      try {
+        var directory = Files.createTempDirectory("run.workflow-worker-");
+        var file = Files.writeString(directory.resolve("Worker.java"), text);
+        file.toFile().deleteOnExit();
+        directory.toFile().deleteOnExit();
+        return file;
+      } catch (IOException exception) {
+        throw new UncheckedIOException("Store worker program failed", exception);
+      }
+    }
+  }
+}
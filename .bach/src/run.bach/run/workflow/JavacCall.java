@@ -0,0 +1,142 @@
+package run.workflow;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
+import run.bach.ToolCall;
+
+/**
+ * A parsed view of a javac tool call compiling modules in multi-module mode.
+ *
+ * @param options all arguments except the value of {@code --module}
+ * @param modules names of the modules to compile, in declaration order
+ * @param sources source roots of each module to compile
+ * @param destination the class output directory passed via {@code -d}
+ * @param modulePath entries of the module path
+ */
+public record JavacCall(
+    List<String> options,
+    List<String> modules,
+    Map<String, List<Path>> sources,
+    Path destination,
+    List<Path> modulePath) {
+
+  public static JavacCall of(ToolCall javac) {
+    return of(javac.arguments());
+  }
+
+  public static JavacCall of(List<String> arguments) {
+    var options = new ArrayList<String>();
+    var modules = new ArrayList<String>();
+    var patterns = new ArrayList<String>();
+    var specifics = new LinkedHashMap<String, List<Path>>();
+    var destination = Path.of("");
+    var modulePath = new ArrayList<Path>();
+    var iterator = arguments.iterator();
+    while (iterator.hasNext()) {
+      var option = iterator.next();
+      switch (option) {
+        case "--module", "-m" -> {
+          for (var module : iterator.next().split(",")) modules.add(module.strip());
+        }
+        case "--module-source-path" -> {
+          var value = iterator.next();
+          var equals = value.indexOf('=');
+          if (equals > 0) specifics.put(value.substring(0, equals), paths(value, equals + 1));
+          else patterns.addAll(List.of(value.split(File.pathSeparator)));
+          options.addAll(List.of(option, value));
+        }
+        case "-d" -> {
+          var value = iterator.next();
+          destination = Path.of(value);
+          options.addAll(List.of(option, value));
+        }
+        case "--module-path", "-p" -> {
+          var value = iterator.next();
+          for (var entry : value.split(File.pathSeparator)) modulePath.add(Path.of(entry));
+          options.addAll(List.of(option, value));
+        }
+        default -> options.add(option);
+      }
+    }
+    if (modules.isEmpty()) throw new IllegalArgumentException("No --module given: " + arguments);
+    var sources = new LinkedHashMap<String, List<Path>>();
+    for (var module : modules) {
+      var specific = specifics.get(module);
+      if (specific != null) {
+        sources.put(module, specific);
+        continue;
+      }
+      var roots = new ArrayList<Path>();
+      for (var pattern : patterns) {
+        var path = pattern.contains("*") ? pattern.replace("*", module) : pattern + "/" + module;
+        roots.add(Path.of(path));
+      }
+      sources.put(module, List.copyOf(roots));
+    }
+    return new JavacCall(options, modules, sources, destination, modulePath);
+  }
+
+  private static List<Path> paths(String value, int beginIndex) {
+    var paths = value.substring(beginIndex).split("[,%s]".formatted(File.pathSeparator));
+    return Stream.of(paths).map(Path::of).toList();
+  }
+
+  public JavacCall {
+    options = List.copyOf(options);
+    modules = List.copyOf(modules);
+    sources = Map.copyOf(sources);
+    modulePath = List.copyOf(modulePath);
+  }
+
+  /** {@return the value of the {@code --release} option, if present} */
+  public Optional<String> release() {
+    var index = options.indexOf("--release");
+    return index >= 0 ? Optional.of(options.get(index + 1)) : Optional.empty();
+  }
+
+  /** {@return the class output directory of the given module} */
+  public Path destination(String module) {
+    return destination.resolve(module);
+  }
+
+  /** {@return a list of all Java source files of the given module, sorted by path} */
+  public List<Path> findSourceFiles(String module) {
+    var files = new ArrayList<Path>();
+    for (var root : sources.getOrDefault(module, List.of())) {
+      if (!Files.isDirectory(root)) continue;
+      try (var stream = Files.walk(root)) {
+        stream.filter(file -> file.toString().endsWith(".java")).forEach(files::add);
+      } catch (IOException exception) {
+        throw new UncheckedIOException("Walk %s failed".formatted(root), exception);
+      }
+    }
+    return files.stream().sorted().toList();
+  }
+
+  /** {@return the module declaration of the given module, if found in its source roots} */
+  public Optional<ModuleDeclaration> findModuleDeclaration(String module) {
+    for (var root : sources.getOrDefault(module, List.of())) {
+      var file = root.resolve("module-info.java");
+      if (Files.isRegularFile(file)) return Optional.of(ModuleDeclaration.of(file));
+    }
+    return Optional.empty();
+  }
+
+  /** {@return a new javac tool call compiling only the given modules} */
+  public ToolCall toToolCall(Collection<String> modules, String... additionalOptions) {
+    var call = ToolCall.of("javac");
+    for (var option : options) call = call.add(option);
+    for (var option : additionalOptions) call = call.add(option);
+    return call.add("--module").add(String.join(",", modules));
+  }
+}
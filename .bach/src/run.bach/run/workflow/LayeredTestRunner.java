@@ -0,0 +1,193 @@
+package run.workflow;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.lang.module.ModuleFinder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.spi.ToolProvider;
+
+/**
+ * Runs JUnit for each test module in isolation and merges all results into one report.
+ *
+ * <p>By default, each test module is resolved into its own {@link ModuleLayer} of the running JVM,
+ * defined with a fresh class loader, and the layer's {@code junit} tool provider is run with the
+ * layer's loader as the thread's context class loader. Up to {@code parallelism} test modules run
+ * at the same time, without starting a JVM. In fork mode, test modules run in a bounded pool of
+ * reusable worker JVMs, one test module at a time per worker, trading startup time for process
+ * isolation, for example for tests setting system properties. A worker is retired after a number
+ * of runs, see {@link JavaWorkerPool#ofModulePath(String, List, String, int)}.
+ *
+ * <p>Each run writes XML reports to {@code reports/MODULE}; all of them are merged into {@code
+ * reports/TEST-all.xml}.
+ *
+ * @param modulePath directories and modular JAR files to resolve test modules from
+ * @param reports the directory to write test reports to
+ * @param parallelism the maximum number of test modules to run at the same time
+ * @param fork {@code true} to run test modules in worker JVMs
+ */
+public record LayeredTestRunner(
+    List<Path> modulePath, Path reports, int parallelism, boolean fork) {
+  /** The module providing the JUnit Platform console launcher. */
+  public static final String CONSOLE = "org.junit.platform.console";
+
+  /** The console launcher's main class, run in a new JVM if no worker can be started. */
+  private static final String LAUNCHER = CONSOLE + "/org.junit.platform.console.ConsoleLauncher";
+
+  /** The outcome of running the tests of one module. */
+  public record Result(String module, int code, String output, Duration duration) {
+    public boolean passed() {
+      return code == 0;
+    }
+  }
+
+  public LayeredTestRunner {
+    modulePath = List.copyOf(modulePath);
+    if (parallelism < 1) throw new IllegalArgumentException("parallelism < 1: " + parallelism);
+  }
+
+  /**
+   * Runs the tests of all given modules, printing each module's output once it completed.
+   *
+   * @param modules names of the test modules
+   * @param args additional JUnit console launcher arguments
+   * @return results sorted by module name
+   * @throws RuntimeException if tests of a module failed
+   */
+  public List<Result> run(List<String> modules, List<String> args) {
+    var results = execute(modules, args);
+    requireAllPassed(results);
+    return results;
+  }
+
+  /**
+   * Runs the tests of all given modules, like {@link #run(List, List)}, without failing.
+   *
+   * @return results sorted by module name, including those of failed test modules
+   */
+  public List<Result> execute(List<String> modules, List<String> args) {
+    var futures = new TreeMap<String, Future<Result>>();
+    var pool =
+        fork ? JavaWorkerPool.ofModulePath("junit", modulePath, LAUNCHER, parallelism) : null;
+    try (var executor = Executors.newFixedThreadPool(parallelism)) {
+      for (var module : modules) {
+        futures.put(module, executor.submit(() -> run(module, args, pool)));
+      }
+    } finally {
+      if (pool != null) pool.close();
+    }
+    var results = new ArrayList<Result>();
+    for (var future : futures.values()) {
+      try {
+        results.add(future.get());
+      } catch (ExecutionException exception) {
+        throw new RuntimeException(exception.getCause());
+      } catch (InterruptedException exception) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException(exception);
+      }
+    }
+    mergeReports(results);
+    return List.copyOf(results);
+  }
+
+  /** Throws if tests of any module failed. */
+  public static void requireAllPassed(List<Result> results) {
+    var failed = results.stream().filter(result -> !result.passed()).map(Result::module).toList();
+    if (!failed.isEmpty()) {
+      throw new RuntimeException("%d test module(s) failed: %s".formatted(failed.size(), failed));
+    }
+  }
+
+  private Result run(String module, List<String> args, JavaWorkerPool pool) {
+    var arguments = new ArrayList<>(args);
+    arguments.addAll(List.of("--select-module", module));
+    arguments.addAll(List.of("--reports-dir", reports.resolve(module).toString()));
+    var output = OutputCapture.ofDefaultLimit();
+    var start = System.nanoTime();
+    var code =
+        pool == null ? runInLayer(module, arguments, output) : runInWorker(pool, arguments, output);
+    var duration = Duration.ofNanos(System.nanoTime() - start);
+    var result = new Result(module, code, output.toString(), duration);
+    print(result);
+    return result;
+  }
+
+  private int runInLayer(String module, List<String> arguments, OutputCapture output) {
+    var finder = ModuleFinder.of(modulePath.toArray(Path[]::new));
+    var boot = ModuleLayer.boot();
+    var roots = Set.of(module, CONSOLE);
+    var configuration = boot.configuration().resolveAndBind(finder, ModuleFinder.of(), roots);
+    var parent = ClassLoader.getPlatformClassLoader();
+    var layer = boot.defineModulesWithOneLoader(configuration, parent); // fresh loader per run
+    var junit =
+        ServiceLoader.load(layer, ToolProvider.class).stream()
+            .filter(provider -> provider.type().getModule().getLayer() == layer)
+            .map(ServiceLoader.Provider::get)
+            .filter(provider -> provider.name().equals("junit"))
+            .findFirst()
+            .orElseThrow(() -> new IllegalStateException("No junit tool in " + CONSOLE));
+    var thread = Thread.currentThread();
+    var context = thread.getContextClassLoader();
+    thread.setContextClassLoader(layer.findLoader(module));
+    var writer = new PrintWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8), true);
+    try {
+      return junit.run(writer, writer, arguments.toArray(String[]::new));
+    } finally {
+      writer.flush();
+      thread.setContextClassLoader(context);
+    }
+  }
+
+  private int runInWorker(JavaWorkerPool pool, List<String> arguments, OutputCapture output) {
+    var writer = new PrintWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8), true);
+    try {
+      return pool.provider().run(writer, writer, arguments.toArray(String[]::new));
+    } finally {
+      writer.flush();
+    }
+  }
+
+  private static synchronized void print(Result result) {
+    var seconds = result.duration().toMillis() / 1000.0;
+    var status = result.code() == 0 ? "passed" : "failed with exit code " + result.code();
+    System.out.printf("Tests of %s %s in %.3f s%n", result.module(), status, seconds);
+    var output = result.output().strip();
+    if (!output.isEmpty()) (result.code() == 0 ? System.out : System.err).println(output);
+  }
+
+  /** Merges the XML reports of all test modules into {@code TEST-all.xml}. */
+  private void mergeReports(List<Result> results) {
+    var prefix = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<testsuites>\n";
+    var suites = new StringJoiner("\n", prefix, "\n</testsuites>\n");
+    try {
+      for (var result : results) {
+        var directory = reports.resolve(result.module());
+        if (!Files.isDirectory(directory)) continue;
+        try (var stream = Files.newDirectoryStream(directory, "TEST-*.xml")) {
+          for (var file : stream) {
+            var xml = Files.readString(file).replaceFirst("^<\\?xml[^>]*\\?>\\s*", "");
+            suites.add(xml.strip());
+          }
+        }
+      }
+      Files.createDirectories(reports);
+      Files.writeString(reports.resolve("TEST-all.xml"), suites.toString());
+    } catch (IOException exception) {
+      throw new UncheckedIOException("Merge reports in %s failed".formatted(reports), exception);
+    }
+  }
+}
@@ -0,0 +1,40 @@
+package run.workflow;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/** A module's name and the names of modules it requires, read from a module-info.java file. */
+public record ModuleDeclaration(String name, Set<String> requires) {
+  private static final Pattern COMMENT = Pattern.compile("//[^\\n]*|/\\*(?s:.*?)\\*/");
+  private static final Pattern MODULE = Pattern.compile("\\bmodule\\s+([\\w.]+)\\s*\\{");
+  private static final Pattern REQUIRES =
+      Pattern.compile("\\brequires\\s+(?:(?:transitive|static)\\s+)*([\\w.]+)\\s*;");
+
+  public ModuleDeclaration {
+    requires = Set.copyOf(requires);
+  }
+
+  public static ModuleDeclaration of(Path file) {
+    try {
+      return of(Files.readString(file));
+    } catch (IOException exception) {
+      var message = "Read module declaration %s failed".formatted(file);
+      throw new UncheckedIOException(message, exception);
+    }
+  }
+
+  public static ModuleDeclaration of(String source) {
+    var text = COMMENT.matcher(source).replaceAll(" ");
+    var module = MODULE.matcher(text);
+    if (!module.find()) throw new IllegalArgumentException("No module declaration found");
+    var requires = new LinkedHashSet<String>();
+    var matcher = REQUIRES.matcher(text);
+    while (matcher.find()) requires.add(matcher.group(1));
+    return new ModuleDeclaration(module.group(1), requires);
+  }
+}
@@ -0,0 +1,94 @@
+package run.workflow;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Function;
+
+/**
+ * A directed acyclic graph of modules and the modules they require.
+ *
+ * @param requires map of module names to the names of required modules within this graph
+ */
+public record ModuleGraph(Map<String, Set<String>> requires) {
+  public static ModuleGraph of(Collection<String> modules, Function<String, Set<String>> requires) {
+    var map = new LinkedHashMap<String, Set<String>>();
+    for (var module : modules) {
+      var edges = new TreeSet<>(requires.apply(module));
+      edges.retainAll(modules);
+      map.put(module, edges);
+    }
+    return new ModuleGraph(map);
+  }
+
+  public static ModuleGraph of(Collection<ModuleDeclaration> declarations) {
+    var map = new LinkedHashMap<String, Set<String>>();
+    for (var declaration : declarations) map.put(declaration.name(), declaration.requires());
+    return of(map.keySet(), map::get);
+  }
+
+  public ModuleGraph {
+    var copy = new LinkedHashMap<String, Set<String>>();
+    requires.forEach((module, edges) -> copy.put(module, Set.copyOf(edges)));
+    requires = Collections.unmodifiableMap(copy);
+    topologicalOrder(requires); // fail fast on cycles
+  }
+
+  public Set<String> modules() {
+    return requires.keySet();
+  }
+
+  public Set<String> requires(String module) {
+    return requires.getOrDefault(module, Set.of());
+  }
+
+  /** {@return names of all modules that directly or indirectly require the given module} */
+  public Set<String> dependents(String module) {
+    var dependents = new TreeSet<String>();
+    var pending = new ArrayList<>(List.of(module));
+    while (!pending.isEmpty()) {
+      var current = pending.removeLast();
+      for (var entry : requires.entrySet()) {
+        if (entry.getValue().contains(current) && dependents.add(entry.getKey())) {
+          pending.add(entry.getKey());
+        }
+      }
+    }
+    return dependents;
+  }
+
+  /** {@return all modules ordered such that each module follows all modules it requires} */
+  public List<String> order() {
+    return topologicalOrder(requires);
+  }
+
+  private static List<String> topologicalOrder(Map<String, Set<String>> requires) {
+    var order = new ArrayList<String>();
+    var done = new HashSet<String>();
+    var visiting = new HashSet<String>();
+    for (var module : requires.keySet()) visit(module, requires, done, visiting, order);
+    return List.copyOf(order);
+  }
+
+  private static void visit(
+      String module,
+      Map<String, Set<String>> requires,
+      Set<String> done,
+      Set<String> visiting,
+      List<String> order) {
+    if (done.contains(module)) return;
+    if (!visiting.add(module)) throw new IllegalArgumentException("Cycle detected at " + module);
+    for (var required : requires.getOrDefault(module, Set.of())) {
+      if (requires.containsKey(required)) visit(required, requires, done, visiting, order);
+    }
+    visiting.remove(module);
+    done.add(module);
+    order.add(module);
+  }
+}
@@ -0,0 +1,162 @@
+package run.workflow;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Function;
+import run.bach.ModuleLocator;
+
+/**
+ * An immutable hash map of module names to locations, compiled from an ordered list of sources.
+ *
+ * <p>The index is a module locator itself: like a composed module locator, the first source mapping
+ * a module name wins. Later mappings of the same name to a different location are shadowed and
+ * reported as conflicts when the index is built, instead of being silently ignored during lookups.
+ * Locations are URIs or Maven package URLs of the form {@code
+ * pkg:maven/GROUP/ARTIFACT@VERSION[?classifier=CLASSIFIER]}, which are translated to Maven Central
+ * URIs.
+ *
+ * @param locations map of module names to their locations
+ * @param conflicts shadowed mappings found while building the index
+ */
+public record ModuleLocationIndex(Map<String, String> locations, List<Conflict> conflicts)
+    implements ModuleLocator {
+  /** The Maven repository {@code pkg:maven} locations are translated to. */
+  public static final String MAVEN_CENTRAL =
+      System.getProperty("-Dmaven.repository".substring(2), "https://repo.maven.apache.org/maven2");
+
+  /** A mapping of a module name shadowed by a mapping of an earlier source. */
+  public record Conflict(String module, String winner, String location, String shadowed) {
+    @Override
+    public String toString() {
+      return "%s -> %s of %s shadows mapping of %s".formatted(module, location, winner, shadowed);
+    }
+  }
+
+  public ModuleLocationIndex {
+    locations = Map.copyOf(locations);
+    conflicts = List.copyOf(conflicts);
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /** {@return the given locator, if it is an index, or an index of all names it declares} */
+  public static ModuleLocationIndex of(ModuleLocator locator) {
+    if (locator instanceof ModuleLocationIndex index) return index;
+    return builder().with(locator.toString(), locator).build();
+  }
+
+  /** {@return the location of the given module, as it was mapped} */
+  @Override
+  public Optional<String> locate(String module) {
+    return Optional.ofNullable(locations.get(module));
+  }
+
+  /** {@return the location of the given module, translated to a URI} */
+  public Optional<URI> locateUri(String module) {
+    return locate(module).map(ModuleLocationIndex::toUri);
+  }
+
+  /** {@return the locations of all given modules that are indexed, sorted by module name} */
+  public Map<String, URI> locateAll(Collection<String> modules) {
+    var map = new TreeMap<String, URI>();
+    for (var module : modules) locateUri(module).ifPresent(uri -> map.put(module, uri));
+    return map;
+  }
+
+  /** {@return the names of all indexed modules} */
+  @Override
+  public Set<String> names() {
+    return locations.keySet();
+  }
+
+  /** {@return a lookup function for resolvers} */
+  public Function<String, Optional<URI>> toLocator() {
+    return this::locateUri;
+  }
+
+  /** {@return the given location as a URI, translating Maven package URLs} */
+  static URI toUri(String location) {
+    if (!location.startsWith("pkg:maven/")) return URI.create(location);
+    var purl = location.substring("pkg:maven/".length());
+    var classifier = "";
+    var query = purl.indexOf('?');
+    if (query >= 0) {
+      for (var parameter : purl.substring(query + 1).split("&")) {
+        if (parameter.startsWith("classifier=")) classifier = "-" + parameter.substring(11);
+      }
+      purl = purl.substring(0, query);
+    }
+    var at = purl.lastIndexOf('@');
+    var slash = purl.lastIndexOf('/');
+    if (at < 0 || slash < 0) throw new IllegalArgumentException("Version expected: " + location);
+    var group = purl.substring(0, slash);
+    var artifact = purl.substring(slash + 1, at);
+    var version = purl.substring(at + 1);
+    var path = String.join("/", group.replace('.', '/'), artifact, version);
+    var file = artifact + "-" + version + classifier + ".jar";
+    return URI.create(MAVEN_CENTRAL + "/" + path + "/" + file);
+  }
+
+  /** Collects module mappings of sources in order of precedence. */
+  public static final class Builder {
+    private final Map<String, String> locations = new HashMap<>();
+    private final Map<String, String> sources = new HashMap<>();
+    private final List<Conflict> conflicts = new ArrayList<>();
+
+    private Builder() {}
+
+    /** Adds a single mapping of a module name to its location. */
+    public Builder with(String module, String location) {
+      return with("%s=%s".formatted(module, location), Map.of(module, location));
+    }
+
+    /**
+     * Adds all mappings of a named source, unless a name was mapped by a previous source.
+     *
+     * @param source the name of the source, used to report conflicts
+     * @param mappings map of module names to locations
+     */
+    public Builder with(String source, Map<String, String> mappings) {
+      for (var mapping : new TreeMap<>(mappings).entrySet()) {
+        var module = mapping.getKey();
+        var location = mapping.getValue();
+        var existing = locations.putIfAbsent(module, location);
+        if (existing == null) {
+          sources.put(module, source);
+          continue;
+        }
+        if (existing.equals(location)) continue;
+        conflicts.add(new Conflict(module, sources.get(module), existing, source));
+      }
+      return this;
+    }
+
+    /** Adds mappings of all names declared by the given locator. */
+    public Builder with(String source, ModuleLocator locator) {
+      var mappings = new LinkedHashMap<String, String>();
+      for (var name : locator.names()) locator.locate(name).ifPresent(l -> mappings.put(name, l));
+      return with(source, mappings);
+    }
+
+    /** Adds mappings looked up once for each of the given names. */
+    public Builder with(String source, Set<String> names, Function<String, String> locate) {
+      var mappings = new LinkedHashMap<String, String>();
+      for (var name : names) mappings.put(name, locate.apply(name));
+      return with(source, mappings);
+    }
+
+    public ModuleLocationIndex build() {
+      return new ModuleLocationIndex(locations, conflicts);
+    }
+  }
+}
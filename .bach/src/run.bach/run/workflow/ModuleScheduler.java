@@ -0,0 +1,72 @@
+package run.workflow;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+
+/**
+ * Runs an action for each module of a graph as soon as all modules it requires are done.
+ *
+ * <p>Actions run on virtual threads, at most {@code parallelism} of them at the same time. A module
+ * whose required modules failed is skipped. All failures are reported by a single exception.
+ */
+public record ModuleScheduler(int parallelism) {
+  public static ModuleScheduler ofAvailableProcessors() {
+    var processors = Runtime.getRuntime().availableProcessors();
+    return new ModuleScheduler(Integer.getInteger("-Dparallelism".substring(2), processors));
+  }
+
+  public ModuleScheduler {
+    if (parallelism < 1) throw new IllegalArgumentException("parallelism < 1: " + parallelism);
+  }
+
+  public void run(ModuleGraph graph, Consumer<String> action) {
+    if (parallelism == 1 || graph.modules().size() == 1) {
+      graph.order().forEach(action);
+      return;
+    }
+    var permits = new Semaphore(parallelism);
+    var failures = new ConcurrentHashMap<String, RuntimeException>();
+    var futures = new HashMap<String, CompletableFuture<Void>>();
+    try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      for (var module : graph.order()) {
+        var requires = graph.requires(module).stream().map(futures::get).toList();
+        Runnable task =
+            () -> {
+              permits.acquireUninterruptibly();
+              try {
+                action.accept(module);
+              } catch (RuntimeException exception) {
+                failures.put(module, exception);
+                throw exception;
+              } finally {
+                permits.release();
+              }
+            };
+        var future = allOf(requires).thenRunAsync(task, executor);
+        futures.put(module, future);
+      }
+      allOf(futures.values()).exceptionally(_ -> null).join();
+    }
+    if (failures.isEmpty()) return;
+    var sorted = new TreeMap<>(failures);
+    var unfinished = futures.values().stream().filter(CompletableFuture::isCompletedExceptionally);
+    var skipped = unfinished.count() - sorted.size();
+    var message = "%d module(s) failed: %s".formatted(sorted.size(), sorted.keySet());
+    if (skipped > 0) message += ", %d skipped".formatted(skipped);
+    var exception = new RuntimeException(message);
+    sorted.values().forEach(exception::addSuppressed);
+    throw exception;
+  }
+
+  private static CompletableFuture<Void> allOf(Iterable<CompletableFuture<Void>> futures) {
+    var list = new ArrayList<CompletableFuture<Void>>();
+    futures.forEach(list::add);
+    return CompletableFuture.allOf(list.toArray(new CompletableFuture<?>[0]));
+  }
+}
@@ -0,0 +1,189 @@
+package run.workflow;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A user-level, content-addressed store of downloaded files shared by all projects and tools.
+ *
+ * <p>Each file is stored once, below {@code objects/} named by its SHA-256 checksum. Downloaded
+ * locations are mapped to checksums below {@code uris/}. A file is placed at its target path as a
+ * hard link to the stored object; if linking fails, for example across file stores, it is copied.
+ * Downloads of the same location are serialized by a lock file, held across processes, and by an
+ * in-process lock. Lock files are deleted after use; a process that locks a lock file deleted
+ * concurrently at worst downloads a file again. Objects are made read-only, on file systems with
+ * POSIX permissions, and moved into the store atomically, readers therefore never see incomplete
+ * files. The checksum of an object is verified before it is placed, a corrupted object is deleted
+ * and downloaded again.
+ *
+ * <p>The default store is located at {@code ~/.bach/store}, configurable via {@code -Dstore=PATH}.
+ */
+public final class ModuleStore {
+  /** Downloads a location to a target file, verifying it as specified by the location. */
+  @FunctionalInterface
+  public interface Downloader {
+    void download(URI location, Path target) throws IOException, InterruptedException;
+  }
+
+  private static final Map<String, ReentrantLock> LOCKS = new ConcurrentHashMap<>();
+
+  public static ModuleStore ofUserHome() {
+    var home = Path.of(System.getProperty("user.home"), ".bach", "store");
+    return new ModuleStore(Path.of(System.getProperty("-Dstore".substring(2), home.toString())));
+  }
+
+  private final Path root;
+
+  public ModuleStore(Path root) {
+    this.root = root;
+  }
+
+  public Path root() {
+    return root;
+  }
+
+  /** Places the file of the given location at the target path, using the shared HTTP client. */
+  public boolean fetch(URI location, Path target) {
+    var client = ParallelModuleResolver.SHARED_CLIENT;
+    Downloader downloader = (uri, file) -> ParallelModuleResolver.download(client, uri, file);
+    return fetch(location, target, downloader);
+  }
+
+  /**
+   * Places the file of the given location at the target path, downloading it into the store first
+   * if needed.
+   *
+   * @return {@code true} if the file was already stored, {@code false} if it was downloaded
+   */
+  public boolean fetch(URI location, Path target, Downloader downloader) {
+    var uri = location.toString().replaceFirst("#.*$", "");
+    var key = Digest.sha256().add(uri).toHexString();
+    var event = new BuildEvents.CacheLookupEvent();
+    event.begin();
+    event.cache = "store";
+    event.key = uri;
+    try {
+      var object = find(location, key);
+      if (object != null) {
+        place(object, target);
+        event.hit = true;
+        event.commit();
+        return true;
+      }
+      var file = Files.createDirectories(root.resolve("locks")).resolve(key + ".lock");
+      var lock = LOCKS.computeIfAbsent(key, _ -> new ReentrantLock());
+      lock.lock(); // file locks are held per JVM, serialize threads first
+      var options = new StandardOpenOption[] {StandardOpenOption.CREATE, StandardOpenOption.WRITE};
+      try (var channel = FileChannel.open(file, options);
+          var _ = channel.lock()) {
+        object = find(location, key); // stored by a concurrent build
+        var stored = object != null;
+        if (!stored) object = download(location, key, downloader);
+        place(object, target);
+        event.hit = stored;
+        event.commit();
+        return stored;
+      } finally {
+        unlink(file);
+        lock.unlock();
+      }
+    } catch (IOException exception) {
+      throw new UncheckedIOException("Fetch %s failed".formatted(location), exception);
+    } catch (InterruptedException exception) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted: " + location, exception);
+    }
+  }
+
+  private Path find(URI location, String key) throws IOException {
+    var hash = expectedHash(location);
+    if (hash == null) {
+      var index = root.resolve("uris").resolve(key);
+      if (!Files.isRegularFile(index)) return null;
+      hash = Files.readString(index).strip();
+    }
+    var object = root.resolve("objects").resolve(hash.toLowerCase());
+    if (!Files.isRegularFile(object)) return null;
+    if (Digest.of(object).equals(object.getFileName().toString())) return object;
+    Files.deleteIfExists(object); // corrupted, download it again
+    return null;
+  }
+
+  private Path download(URI location, String key, Downloader downloader)
+      throws IOException, InterruptedException {
+    var temporary = Files.createDirectories(root.resolve("tmp"));
+    var file = Files.createTempFile(temporary, ".download-", "");
+    try {
+      Files.delete(file); // let the downloader create it
+      downloader.download(location, file);
+      var object = Files.createDirectories(root.resolve("objects")).resolve(Digest.of(file));
+      protect(file);
+      try {
+        Files.move(file, object, StandardCopyOption.ATOMIC_MOVE);
+      } catch (FileAlreadyExistsException exception) {
+        // same content stored for another location
+      }
+      var index = Files.createDirectories(root.resolve("uris")).resolve(key);
+      var text = Files.createTempFile(temporary, ".uri-", "");
+      Files.writeString(text, object.getFileName().toString());
+      Files.move(text, index, StandardCopyOption.ATOMIC_MOVE);
+      return object;
+    } finally {
+      Files.deleteIfExists(file);
+    }
+  }
+
+  /** Links or copies the stored object to the target path, replacing it atomically. */
+  private static void place(Path object, Path target) throws IOException {
+    var directory = Files.createDirectories(target.toAbsolutePath().getParent());
+    var temporary = Files.createTempFile(directory, ".store-", "");
+    try {
+      Files.delete(temporary);
+      try {
+        Files.createLink(temporary, object);
+      } catch (UnsupportedOperationException | IOException exception) {
+        Files.copy(object, temporary);
+        temporary.toFile().setWritable(true);
+      }
+      Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temporary);
+    }
+  }
+
+  /** Makes a file read-only, shared by hard links it must not be changed in place. */
+  private static void protect(Path file) throws IOException {
+    var view = Files.getFileAttributeView(file, PosixFileAttributeView.class);
+    if (view != null) view.setPermissions(PosixFilePermissions.fromString("r--r--r--"));
+  }
+
+  /** Deletes a lock file, unless another process holds it open and prevents that. */
+  private static void unlink(Path file) {
+    try {
+      Files.deleteIfExists(file);
+    } catch (IOException exception) {
+      // still in use, deleted after a later fetch
+    }
+  }
+
+  private static String expectedHash(URI location) {
+    var fragment = location.getFragment();
+    if (fragment == null) return null;
+    for (var parameter : fragment.split("&")) {
+      if (parameter.startsWith("SHA-256=")) return parameter.substring(8);
+    }
+    return null;
+  }
+}
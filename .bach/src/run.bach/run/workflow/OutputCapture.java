@@ -0,0 +1,146 @@
+package run.workflow;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+/**
+ * An output stream that keeps a bounded head and tail of all bytes written to it.
+ *
+ * <p>The first {@code limit / 2} bytes are kept as the head, the last {@code limit / 2} bytes are
+ * kept in a ring buffer as the tail, and only the number of bytes in between is remembered. Memory
+ * used per capture therefore stays flat regardless of the output's size. Lines are only decoded if
+ * a line listener is registered.
+ */
+public final class OutputCapture extends OutputStream {
+  /** Default number of bytes kept, configurable via {@code -Dcapture.limit=BYTES}. */
+  public static final int DEFAULT_LIMIT =
+      Integer.getInteger("-Dcapture.limit".substring(2), 64 * 1024);
+
+  public static OutputCapture ofDefaultLimit() {
+    return ofLimit(DEFAULT_LIMIT);
+  }
+
+  public static OutputCapture ofLimit(int limit) {
+    if (limit < 2) throw new IllegalArgumentException("Limit too small: " + limit);
+    return new OutputCapture(limit / 2, limit - limit / 2, null);
+  }
+
+  /**
+   * Copies all bytes from the source to the target streams in bulk, without decoding them.
+   *
+   * @return the number of bytes transferred
+   */
+  public static long transfer(InputStream source, OutputStream... targets) {
+    try {
+      if (targets.length == 1) return source.transferTo(targets[0]);
+      var buffer = new byte[8192];
+      var total = 0L;
+      for (int read; (read = source.read(buffer)) >= 0; total += read) {
+        for (var target : targets) target.write(buffer, 0, read);
+      }
+      return total;
+    } catch (IOException exception) {
+      throw new UncheckedIOException("Transfer failed", exception);
+    }
+  }
+
+  private final byte[] head;
+  private final byte[] tail;
+  private final Consumer<String> listener;
+  private final ByteArrayOutputStream line;
+  private int headSize;
+  private long tailCount;
+  private long size;
+
+  private OutputCapture(int headLimit, int tailLimit, Consumer<String> listener) {
+    this.head = new byte[headLimit];
+    this.tail = new byte[tailLimit];
+    this.listener = listener;
+    this.line = listener == null ? null : new ByteArrayOutputStream();
+  }
+
+  /** {@return a new and empty capture calling the given listener for each line written} */
+  public OutputCapture withLineListener(Consumer<String> listener) {
+    return new OutputCapture(head.length, tail.length, listener);
+  }
+
+  /** {@return the total number of bytes written} */
+  public synchronized long size() {
+    return size;
+  }
+
+  /** {@return the number of bytes written but not kept} */
+  public synchronized long omitted() {
+    return Math.max(0, tailCount - tail.length);
+  }
+
+  @Override
+  public void write(int b) {
+    write(new byte[] {(byte) b}, 0, 1);
+  }
+
+  @Override
+  public synchronized void write(byte[] bytes, int offset, int length) {
+    size += length;
+    if (listener != null) listen(bytes, offset, length);
+    var toHead = Math.min(length, head.length - headSize);
+    System.arraycopy(bytes, offset, head, headSize, toHead);
+    headSize += toHead;
+    offset += toHead;
+    length -= toHead;
+    if (length == 0) return;
+    if (length >= tail.length) {
+      offset += length - tail.length;
+      tailCount += length - tail.length;
+      length = tail.length;
+    }
+    var position = (int) (tailCount % tail.length);
+    var first = Math.min(length, tail.length - position);
+    System.arraycopy(bytes, offset, tail, position, first);
+    System.arraycopy(bytes, offset + first, tail, 0, length - first);
+    tailCount += length;
+  }
+
+  @Override
+  public synchronized void close() {
+    if (listener != null && line.size() > 0) emit();
+  }
+
+  /** {@return the kept bytes, decoded as UTF-8, with a summary line for omitted bytes} */
+  @Override
+  public synchronized String toString() {
+    var builder = new StringBuilder(new String(head, 0, headSize, StandardCharsets.UTF_8));
+    if (tailCount == 0) return builder.toString();
+    var omitted = omitted();
+    if (omitted > 0) builder.append("%n[... %d bytes omitted ...]%n".formatted(omitted));
+    var kept = (int) Math.min(tailCount, tail.length);
+    var start = (int) ((tailCount - kept) % tail.length);
+    var bytes = new byte[kept];
+    var first = Math.min(kept, tail.length - start);
+    System.arraycopy(tail, start, bytes, 0, first);
+    System.arraycopy(tail, 0, bytes, first, kept - first);
+    return builder.append(new String(bytes, StandardCharsets.UTF_8)).toString();
+  }
+
+  private void listen(byte[] bytes, int offset, int length) {
+    var start = offset;
+    for (int i = offset; i < offset + length; i++) {
+      if (bytes[i] != '\n') continue;
+      line.write(bytes, start, i - start);
+      emit();
+      start = i + 1;
+    }
+    line.write(bytes, start, offset + length - start);
+  }
+
+  private void emit() {
+    var text = line.toString(StandardCharsets.UTF_8);
+    line.reset();
+    listener.accept(text.endsWith("\r") ? text.substring(0, text.length() - 1) : text);
+  }
+}
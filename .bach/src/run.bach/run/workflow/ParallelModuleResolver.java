@@ -0,0 +1,207 @@
+package run.workflow;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.module.ModuleDescriptor;
+import java.lang.module.ModuleFinder;
+import java.lang.module.ModuleReference;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+
+/**
+ * Resolves modules into a single directory, downloading each wave of missing modules concurrently.
+ *
+ * <p>All downloads share one HTTP client, which negotiates HTTP/2 and reuses connections. At most
+ * {@code parallelism} downloads run at the same time. A module is streamed into a temporary file
+ * in the target directory while its size and SHA-256 checksum are computed. Both are verified
+ * against optional {@code SIZE=BYTES} and {@code SHA-256=HEX} parameters of the location's
+ * fragment, like in {@code https://host/path/module.jar#SIZE=123&SHA-256=abc...}, before the file
+ * is moved atomically into place.
+ *
+ * @param directory the directory to store modular JAR files in
+ * @param locator the function mapping module names to their remote locations
+ * @param client the HTTP client to download modules with
+ * @param parallelism the maximum number of concurrent downloads
+ * @param store the store to look up and to keep downloaded modules in
+ */
+public record ParallelModuleResolver(
+    Path directory,
+    Function<String, Optional<URI>> locator,
+    HttpClient client,
+    int parallelism,
+    ModuleStore store) {
+
+  static final HttpClient SHARED_CLIENT =
+      HttpClient.newBuilder()
+          .version(HttpClient.Version.HTTP_2)
+          .followRedirects(HttpClient.Redirect.NORMAL)
+          .connectTimeout(Duration.ofSeconds(10))
+          .build();
+
+  public static ParallelModuleResolver ofSingleDirectory(
+      Path directory, Function<String, Optional<URI>> locator) {
+    var parallelism = Integer.getInteger("-Ddownloads".substring(2), 8);
+    var store = ModuleStore.ofUserHome();
+    return new ParallelModuleResolver(directory, locator, SHARED_CLIENT, parallelism, store);
+  }
+
+  public ParallelModuleResolver {
+    if (parallelism < 1) throw new IllegalArgumentException("parallelism < 1: " + parallelism);
+  }
+
+  /** Resolves a single module, without resolving modules it requires. */
+  public void resolveModule(String module) {
+    resolveModules(List.of(module));
+  }
+
+  /** Resolves the given modules concurrently, without resolving modules they require. */
+  public void resolveModules(Collection<String> modules) {
+    var missing = new TreeSet<>(modules);
+    missing.removeIf(this::isResolved);
+    if (missing.isEmpty()) return;
+    var permits = new Semaphore(parallelism);
+    var failures = new ConcurrentHashMap<String, RuntimeException>();
+    try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      for (var module : missing) {
+        executor.execute(
+            () -> {
+              permits.acquireUninterruptibly();
+              try {
+                download(module);
+              } catch (RuntimeException exception) {
+                failures.put(module, exception);
+              } finally {
+                permits.release();
+              }
+            });
+      }
+    }
+    if (failures.isEmpty()) return;
+    var sorted = new TreeMap<>(failures);
+    var message = "%d module(s) not resolved: %s".formatted(sorted.size(), sorted.keySet());
+    var exception = new RuntimeException(message);
+    sorted.values().forEach(exception::addSuppressed);
+    throw exception;
+  }
+
+  /** Resolves modules required by modules in the directory, wave by wave. */
+  public void resolveMissingModules() {
+    for (var missing = findMissingModules(); !missing.isEmpty(); missing = findMissingModules()) {
+      resolveModules(missing);
+    }
+  }
+
+  /**
+   * Resolves the given modules and all modules they require, unless the lockfile matches.
+   *
+   * <p>A matching lockfile that lists all given modules lets warm builds skip reading module
+   * descriptors and looking up locations. Otherwise, all modules are resolved with locked modules
+   * downloaded from their locked locations, verified against their locked sizes and checksums,
+   * and the lockfile is written anew.
+   *
+   * @return {@code true} if resolution was skipped due to a matching lockfile
+   * @throws IllegalStateException if a JAR file in the directory differs from its locked state
+   */
+  public boolean resolveLocked(Collection<String> modules, Path lockfile) {
+    var lock = ResolutionLock.load(lockfile);
+    if (lock.modules().keySet().containsAll(modules) && lock.matches(directory)) return true;
+    Function<String, Optional<URI>> pinned =
+        module -> lock.location(module).or(() -> locator.apply(module));
+    var resolver = new ParallelModuleResolver(directory, pinned, client, parallelism, store);
+    resolver.resolveModules(modules);
+    resolver.resolveMissingModules();
+    lock.verify(directory);
+    ResolutionLock.of(directory, locator).store(lockfile);
+    return false;
+  }
+
+  /** {@return names of modules required by, but neither in the directory nor in the system} */
+  public Set<String> findMissingModules() {
+    var finder = ModuleFinder.compose(ModuleFinder.ofSystem(), ModuleFinder.of(directory));
+    var missing = new TreeSet<String>();
+    for (var reference : ModuleFinder.of(directory).findAll()) {
+      for (var requires : reference.descriptor().requires()) {
+        if (requires.modifiers().contains(ModuleDescriptor.Requires.Modifier.STATIC)) continue;
+        if (finder.find(requires.name()).isEmpty()) missing.add(requires.name());
+      }
+    }
+    return missing;
+  }
+
+  private boolean isResolved(String module) {
+    var finder = ModuleFinder.compose(ModuleFinder.ofSystem(), ModuleFinder.of(directory));
+    return finder.find(module).map(ModuleReference::descriptor).isPresent();
+  }
+
+  private void download(String module) {
+    var location =
+        locator
+            .apply(module)
+            .orElseThrow(() -> new IllegalStateException("Module not locatable: " + module));
+    store.fetch(location, directory.resolve(module + ".jar"), this::download);
+  }
+
+  /** Downloads and verifies a file, making it visible at the target path only when complete. */
+  public void download(URI location, Path target) throws IOException, InterruptedException {
+    download(client, location, target);
+  }
+
+  static void download(HttpClient client, URI location, Path target)
+      throws IOException, InterruptedException {
+    var expectedSize = -1L;
+    var expectedHash = "";
+    var fragment = location.getFragment();
+    if (fragment != null) {
+      for (var parameter : fragment.split("&")) {
+        if (parameter.startsWith("SIZE=")) expectedSize = Long.parseLong(parameter.substring(5));
+        if (parameter.startsWith("SHA-256=")) expectedHash = parameter.substring(8);
+      }
+    }
+    var uri = URI.create(location.toString().replaceFirst("#.*$", ""));
+    var event = new BuildEvents.DownloadEvent();
+    event.begin();
+    event.uri = uri.toString();
+    var start = System.nanoTime();
+    var request = HttpRequest.newBuilder(uri).GET().build();
+    var response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+    var temporary = Files.createTempFile(target.toAbsolutePath().getParent(), ".download-", "");
+    event.status = response.statusCode();
+    var digest = Digest.sha256();
+    try (var stream = digest.digesting(response.body())) {
+      if (response.statusCode() != 200) {
+        throw new IOException("HTTP %d for %s".formatted(response.statusCode(), uri));
+      }
+      var size = Files.copy(stream, temporary, StandardCopyOption.REPLACE_EXISTING);
+      event.bytes = size;
+      if (expectedSize >= 0 && size != expectedSize) {
+        throw new IOException("Size mismatch for %s: %d != %d".formatted(uri, size, expectedSize));
+      }
+      var hash = digest.toHexString();
+      if (!expectedHash.isEmpty() && !hash.equalsIgnoreCase(expectedHash)) {
+        throw new IOException("SHA-256 mismatch for %s: %s".formatted(uri, hash));
+      }
+      Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temporary);
+      var nanos = Math.max(1, System.nanoTime() - start);
+      event.throughput = event.bytes * 1_000_000_000 / nanos;
+      event.commit();
+    }
+  }
+}
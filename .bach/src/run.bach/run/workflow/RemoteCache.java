@@ -0,0 +1,211 @@
+package run.workflow;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * A shared, remote tier of a build cache.
+ *
+ * <p>Implementations transfer complete cache entries, identified by their keys. They must not throw
+ * on network failures: an unreachable remote cache is reported once and ignored afterwards.
+ */
+public interface RemoteCache {
+  /**
+   * Downloads an entry into the given, non-existent, directory.
+   *
+   * @return {@code true} if the entry was found and downloaded, else {@code false}
+   */
+  boolean fetch(String key, Path directory);
+
+  /** Uploads the content of the given directory as the entry of the given key. */
+  void push(String key, Path directory);
+
+  /**
+   * {@return a remote cache using HTTP GET and PUT requests of ZIP-compressed entries}
+   *
+   * @param base the URI the entry's key is resolved against, like {@code http://host:8080/cache/}
+   */
+  static RemoteCache ofHttp(URI base) {
+    var uri = base.toString().endsWith("/") ? base : URI.create(base + "/");
+    var client =
+        HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(3))
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .build();
+    return new Http(uri, client, new AtomicBoolean(true));
+  }
+
+  /**
+   * An HTTP-based remote cache implementation.
+   *
+   * <p>Each ZIP file ends with an entry listing names and SHA-256 digests of all other entries.
+   * Downloaded entries not matching that list are discarded, like after a truncated upload.
+   */
+  record Http(URI base, HttpClient client, AtomicBoolean available) implements RemoteCache {
+    private static final String ENTRIES = ".entries";
+
+    @Override
+    public boolean fetch(String key, Path directory) {
+      if (!available.get()) return false;
+      var request = HttpRequest.newBuilder(base.resolve(key)).GET().build();
+      try {
+        var response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        try (var stream = response.body()) {
+          if (response.statusCode() != 200) return false;
+          if (unzip(stream, directory)) return true;
+        }
+        System.err.printf("Discard corrupt entry %s of remote cache %s%n", key, base);
+        TreeDeleter.delete(directory);
+        return false;
+      } catch (IOException exception) {
+        unavailable(exception);
+        return false;
+      } catch (InterruptedException exception) {
+        Thread.currentThread().interrupt();
+        return false;
+      }
+    }
+
+    @Override
+    public void push(String key, Path directory) {
+      if (!available.get()) return;
+      var failure = new AtomicReference<IOException>();
+      var pipe = new PipedInputStream(1 << 16);
+      Thread zipper = null;
+      try {
+        var sink = new PipedOutputStream(pipe);
+        zipper = Thread.ofVirtual().name("push-" + key).start(() -> zip(directory, sink, failure));
+        var body = failing(pipe, failure);
+        var publisher = HttpRequest.BodyPublishers.ofInputStream(() -> body);
+        var request = HttpRequest.newBuilder(base.resolve(key)).PUT(publisher).build();
+        var response = client.send(request, HttpResponse.BodyHandlers.discarding());
+        if (response.statusCode() / 100 != 2) {
+          System.err.printf("Push %s to remote cache failed: %d%n", key, response.statusCode());
+        }
+      } catch (IOException exception) {
+        if (failure.get() == null) unavailable(exception);
+      } catch (InterruptedException exception) {
+        Thread.currentThread().interrupt();
+      } finally {
+        closeAndJoin(pipe, zipper);
+      }
+      // A local read failure aborts the upload, but doesn't make the remote cache unavailable
+      if (failure.get() != null) {
+        System.err.printf("Push %s to remote cache failed: %s%n", key, failure.get());
+      }
+    }
+
+    private void unavailable(IOException exception) {
+      if (available.getAndSet(false)) {
+        System.err.printf("Remote cache %s is unavailable: %s%n", base, exception);
+      }
+    }
+
+    /** Writes all files of the directory and the list of their digests to the sink. */
+    private static void zip(
+        Path directory, PipedOutputStream sink, AtomicReference<IOException> failure) {
+      var zip = new ZipOutputStream(sink);
+      try (var stream = Files.walk(directory)) {
+        var digests = new TreeMap<String, String>();
+        for (var file : stream.filter(Files::isRegularFile).toList()) {
+          var name = directory.relativize(file).toString().replace('\\', '/');
+          zip.putNextEntry(new ZipEntry(name));
+          Files.copy(file, zip);
+          zip.closeEntry();
+          digests.put(name, Digest.of(file));
+        }
+        zip.putNextEntry(new ZipEntry(ENTRIES));
+        zip.write(entries(digests).getBytes(StandardCharsets.UTF_8));
+        zip.closeEntry();
+      } catch (IOException | RuntimeException exception) {
+        // Record the failure before the sink is closed: the reading side must not see a clean end
+        failure.set(exception instanceof IOException io ? io : new IOException(exception));
+      } finally {
+        try {
+          zip.close();
+        } catch (IOException exception) {
+          failure.compareAndSet(null, exception);
+        }
+      }
+    }
+
+    /** {@return a stream throwing the recorded failure of the writing side instead of its end} */
+    private static InputStream failing(InputStream stream, AtomicReference<IOException> failure) {
+      return new FilterInputStream(stream) {
+        @Override
+        public int read() throws IOException {
+          return check(super.read());
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+          return check(super.read(bytes, offset, length));
+        }
+
+        private int check(int result) throws IOException {
+          var exception = failure.get();
+          if (exception != null) throw new IOException("Zip entry failed", exception);
+          return result;
+        }
+      };
+    }
+
+    private static void closeAndJoin(PipedInputStream pipe, Thread zipper) {
+      try {
+        pipe.close(); // unblocks the writing side if the upload ended early
+        if (zipper != null) zipper.join();
+      } catch (IOException exception) {
+        // nothing to read anymore
+      } catch (InterruptedException exception) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    private static String entries(Map<String, String> digests) {
+      var lines = new StringJoiner("\n", "", "\n");
+      digests.forEach((name, digest) -> lines.add(digest + " " + name));
+      return lines.toString();
+    }
+
+    /** {@return {@code true} if all entries were extracted and match the list of digests} */
+    private static boolean unzip(InputStream stream, Path directory) throws IOException {
+      var root = Files.createDirectories(directory).toAbsolutePath().normalize();
+      var digests = new TreeMap<String, String>();
+      var expected = "";
+      try (var zip = new ZipInputStream(stream)) {
+        for (var entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+          if (entry.getName().equals(ENTRIES)) {
+            expected = new String(zip.readAllBytes(), StandardCharsets.UTF_8);
+            continue;
+          }
+          var target = root.resolve(entry.getName()).normalize();
+          if (!target.startsWith(root)) throw new IOException("Bad entry: " + entry.getName());
+          if (entry.isDirectory()) continue;
+          Files.createDirectories(target.getParent());
+          Files.copy(zip, target);
+          digests.put(entry.getName(), Digest.of(target));
+        }
+      }
+      return expected.equals(entries(digests));
+    }
+  }
+}
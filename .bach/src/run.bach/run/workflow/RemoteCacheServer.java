@@ -0,0 +1,156 @@
+package run.workflow;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Executors;
+import java.util.regex.Pattern;
+
+/**
+ * A reference implementation of the remote build cache protocol based on a JDK-internal server.
+ *
+ * <ul>
+ *   <li>{@code GET /cache/KEY} responds with the stored entry or with status 404
+ *   <li>{@code PUT /cache/KEY} stores the request body as the entry and responds with status 201,
+ *       or with status 413 if the body exceeds the size limit of an entry
+ * </ul>
+ *
+ * <p>The server doesn't authenticate clients: it listens on the loopback address unless another
+ * address is given explicitly.
+ */
+public final class RemoteCacheServer implements AutoCloseable {
+  /**
+   * Serves a directory until the JVM is terminated.
+   *
+   * @param args port, directory, and host name or address to listen on, defaulting to {@code 8080},
+   *     {@code .bach/var/remote-cache}, and the loopback address
+   */
+  public static void main(String... args) throws Exception {
+    var port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+    var directory = Path.of(args.length > 1 ? args[1] : ".bach/var/remote-cache");
+    var host = args.length > 2 ? InetAddress.getByName(args[2]) : InetAddress.getLoopbackAddress();
+    var limit = Long.getLong("-Dcache.entry.limit".substring(2), DEFAULT_ENTRY_LIMIT);
+    var server = start(new InetSocketAddress(host, port), directory, limit);
+    System.out.println("Serving " + directory.toUri() + " at " + server.uri());
+    Thread.currentThread().join();
+  }
+
+  public static RemoteCacheServer start(InetSocketAddress address, Path directory)
+      throws IOException {
+    return start(address, directory, DEFAULT_ENTRY_LIMIT);
+  }
+
+  /**
+   * {@return a started server}
+   *
+   * @param address the address to listen on
+   * @param directory the directory entries are stored in
+   * @param limit the maximum size of an entry in bytes
+   */
+  public static RemoteCacheServer start(InetSocketAddress address, Path directory, long limit)
+      throws IOException {
+    Files.createDirectories(directory);
+    var server = HttpServer.create(address, 0);
+    var cache = new RemoteCacheServer(server, directory, limit);
+    server.createContext(CONTEXT, cache::handle);
+    server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+    server.start();
+    return cache;
+  }
+
+  /** {@return a server listening on a free port of the loopback address} */
+  public static RemoteCacheServer startOnLoopbackAddress(Path directory) throws IOException {
+    return start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), directory);
+  }
+
+  private static final String CONTEXT = "/cache/";
+  private static final Pattern KEY = Pattern.compile("[0-9a-f]{16,128}");
+  private static final long DEFAULT_ENTRY_LIMIT = 256L << 20;
+
+  private final HttpServer server;
+  private final Path directory;
+  private final long limit;
+
+  private RemoteCacheServer(HttpServer server, Path directory, long limit) {
+    this.server = server;
+    this.directory = directory;
+    this.limit = limit;
+  }
+
+  /** {@return the base URI of this server's cache context} */
+  public URI uri() {
+    var address = server.getAddress();
+    var host = address.getAddress().getHostAddress();
+    return URI.create("http://" + host + ":" + address.getPort() + CONTEXT);
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    try (exchange) {
+      var key = exchange.getRequestURI().getPath().substring(CONTEXT.length());
+      if (!KEY.matcher(key).matches()) {
+        exchange.sendResponseHeaders(400, -1);
+        return;
+      }
+      var file = directory.resolve(key);
+      switch (exchange.getRequestMethod()) {
+        case "GET" -> {
+          if (!Files.isRegularFile(file)) {
+            exchange.sendResponseHeaders(404, -1);
+            return;
+          }
+          exchange.getResponseHeaders().set("Content-Type", "application/zip");
+          exchange.sendResponseHeaders(200, Files.size(file));
+          try (var body = exchange.getResponseBody()) {
+            Files.copy(file, body);
+          }
+        }
+        case "PUT" -> {
+          var length = exchange.getRequestHeaders().getFirst("Content-Length");
+          if (length != null && Long.parseLong(length) > limit) {
+            exchange.sendResponseHeaders(413, -1);
+            return;
+          }
+          var temporary = Files.createTempFile(directory, ".put-", ".zip");
+          try (var body = exchange.getRequestBody()) {
+            // Chunked bodies have no declared length, stop reading them at the limit
+            if (!copy(body, temporary)) {
+              exchange.sendResponseHeaders(413, -1);
+              return;
+            }
+            Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE);
+          } finally {
+            Files.deleteIfExists(temporary);
+          }
+          exchange.sendResponseHeaders(201, -1);
+        }
+        default -> exchange.sendResponseHeaders(405, -1);
+      }
+    }
+  }
+
+  /** {@return {@code true} if the stream was copied, {@code false} if it exceeds the limit} */
+  private boolean copy(InputStream stream, Path file) throws IOException {
+    var buffer = new byte[1 << 16];
+    var size = 0L;
+    try (var out = Files.newOutputStream(file)) {
+      for (int n; (n = stream.read(buffer)) != -1; ) {
+        size += n;
+        if (size > limit) return false;
+        out.write(buffer, 0, n);
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,159 @@
+package run.workflow;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.module.ModuleFinder;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+/**
+ * Records resolved modules of a directory: name, version, location, size, modification time, and
+ * SHA-256 checksum of each modular JAR file.
+ *
+ * <p>A lock matches a directory if the directory contains exactly the recorded JAR files with their
+ * recorded sizes and modification times. Checking that needs a single listing of the directory and
+ * reading attributes of each file, neither module descriptors nor file contents are read. Only a
+ * file with its recorded size but another modification time is read, to compare its checksum.
+ *
+ * <p>Applying a lock pins the locations of locked modules to their recorded sizes and checksums,
+ * and verifying a lock fails if a JAR file in a directory differs from its record.
+ *
+ * @param modules map of module names to their entries
+ */
+public record ResolutionLock(Map<String, Entry> modules) {
+  /** A resolved module and its modular JAR file. */
+  public record Entry(
+      String module,
+      String file,
+      String version,
+      long size,
+      long modified,
+      String sha256,
+      String uri) {
+    String toLine() {
+      return String.join(" ", file, version, "" + size, "" + modified, sha256, uri);
+    }
+
+    static Entry ofLine(String module, String line) {
+      var values = line.split(" ", 6);
+      var size = Long.parseLong(values[2]);
+      var modified = Long.parseLong(values[3]);
+      return new Entry(module, values[0], values[1], size, modified, values[4], values[5]);
+    }
+  }
+
+  public ResolutionLock {
+    modules = Map.copyOf(modules);
+  }
+
+  /** {@return the lock stored in the given file, or an empty lock if it can't be read} */
+  public static ResolutionLock load(Path file) {
+    if (!Files.isRegularFile(file)) return new ResolutionLock(Map.of());
+    try {
+      var modules = new TreeMap<String, Entry>();
+      for (var line : Files.readAllLines(file)) {
+        if (line.isBlank() || line.startsWith("#")) continue;
+        var separator = line.indexOf('=');
+        var module = line.substring(0, separator);
+        modules.put(module, Entry.ofLine(module, line.substring(separator + 1)));
+      }
+      return new ResolutionLock(modules);
+    } catch (IOException | RuntimeException exception) {
+      return new ResolutionLock(Map.of()); // resolve again, instead of trusting a broken lock
+    }
+  }
+
+  /** {@return a lock of all modules in the given directory, with locations looked up} */
+  public static ResolutionLock of(Path directory, Function<String, Optional<URI>> locator) {
+    var modules = new TreeMap<String, Entry>();
+    for (var reference : ModuleFinder.of(directory).findAll()) {
+      var descriptor = reference.descriptor();
+      var module = descriptor.name();
+      var file = Path.of(reference.location().orElseThrow());
+      var version = descriptor.rawVersion().orElse("-");
+      var uri = locator.apply(module).map(URI::toString).orElse("-");
+      try {
+        var size = Files.size(file);
+        var modified = Files.getLastModifiedTime(file).toMillis();
+        var name = file.getFileName().toString();
+        var entry = new Entry(module, name, version, size, modified, Digest.of(file), uri);
+        modules.put(module, entry);
+      } catch (IOException exception) {
+        throw new UncheckedIOException("Lock %s failed".formatted(file), exception);
+      }
+    }
+    return new ResolutionLock(modules);
+  }
+
+  /** {@return {@code true} if the directory contains exactly the locked modules, unchanged} */
+  public boolean matches(Path directory) {
+    if (modules.isEmpty() || !Files.isDirectory(directory)) return false;
+    var files = new TreeMap<String, Entry>();
+    for (var entry : modules.values()) files.put(entry.file(), entry);
+    var count = 0;
+    try (var stream = Files.newDirectoryStream(directory, "*.jar")) {
+      for (var file : stream) {
+        var entry = files.get(file.getFileName().toString());
+        if (entry == null) return false;
+        if (Files.size(file) != entry.size()) return false;
+        var modified = Files.getLastModifiedTime(file).toMillis() != entry.modified();
+        if (modified && !Digest.of(file).equals(entry.sha256())) return false;
+        count++;
+      }
+    } catch (IOException | UncheckedIOException exception) {
+      return false;
+    }
+    return count == modules.size();
+  }
+
+  /** {@return the locked location of the module, with its recorded size and checksum} */
+  public Optional<URI> location(String module) {
+    var entry = modules.get(module);
+    if (entry == null || entry.uri().equals("-")) return Optional.empty();
+    var uri = entry.uri().replaceFirst("#.*$", "");
+    return Optional.of(URI.create(uri + "#SIZE=" + entry.size() + "&SHA-256=" + entry.sha256()));
+  }
+
+  /**
+   * Verifies sizes and checksums of the locked modules' JAR files present in the directory.
+   *
+   * @throws IllegalStateException if a JAR file differs from its recorded size or checksum
+   */
+  public void verify(Path directory) {
+    for (var entry : modules.values()) {
+      var file = directory.resolve(entry.file());
+      if (Files.notExists(file)) continue;
+      try {
+        if (Files.size(file) == entry.size() && Digest.of(file).equals(entry.sha256())) continue;
+      } catch (IOException exception) {
+        throw new UncheckedIOException("Verify %s failed".formatted(file), exception);
+      }
+      var message = "Module %s differs from its lock: %s".formatted(entry.module(), file);
+      throw new IllegalStateException(message);
+    }
+  }
+
+  /** Stores this lock in the given file, replacing it atomically. */
+  public void store(Path file) {
+    var lines = new ArrayList<String>();
+    lines.add("# module=file version size modified sha256 uri");
+    for (var entry : new TreeMap<>(modules).values()) {
+      lines.add(entry.module() + "=" + entry.toLine());
+    }
+    try {
+      var directory = Files.createDirectories(file.toAbsolutePath().getParent());
+      var temporary = Files.createTempFile(directory, ".lock-", "");
+      Files.write(temporary, lines);
+      Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException exception) {
+      throw new UncheckedIOException("Store lock %s failed".formatted(file), exception);
+    }
+  }
+}
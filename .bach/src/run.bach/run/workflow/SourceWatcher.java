@@ -0,0 +1,113 @@
+package run.workflow;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches directory trees for changed files, reporting bursts of changes as one.
+ *
+ * <p>All directories below the given roots are registered with a {@link WatchService}, including
+ * directories created later on. A burst ends when no further change is reported within the
+ * debounce duration, like after an IDE saved all files or a branch was checked out. Hidden files
+ * and editor backup files ending with {@code ~} are ignored.
+ */
+public final class SourceWatcher implements AutoCloseable {
+  public static SourceWatcher of(List<Path> roots) {
+    var millis = Long.getLong("-Dwatch.debounce".substring(2), 300);
+    return new SourceWatcher(roots, Duration.ofMillis(millis));
+  }
+
+  private final List<Path> roots;
+  private final Duration debounce;
+  private final WatchService service;
+  private final Map<WatchKey, Path> directories = new HashMap<>();
+
+  public SourceWatcher(List<Path> roots, Duration debounce) {
+    this.roots = List.copyOf(roots);
+    this.debounce = debounce;
+    try {
+      this.service = FileSystems.getDefault().newWatchService();
+      for (var root : this.roots) register(root);
+    } catch (IOException exception) {
+      throw new UncheckedIOException("Watch %s failed".formatted(roots), exception);
+    }
+  }
+
+  public List<Path> roots() {
+    return roots;
+  }
+
+  /**
+   * Waits for the next burst of changes.
+   *
+   * @return the changed files and directories, or all roots if changes were lost
+   */
+  public Set<Path> await() throws InterruptedException {
+    var changes = new TreeSet<Path>();
+    var key = service.take();
+    while (key != null) {
+      var directory = directories.get(key);
+      for (var event : key.pollEvents()) {
+        if (event.kind() == StandardWatchEventKinds.OVERFLOW || directory == null) {
+          changes.addAll(roots);
+          continue;
+        }
+        var path = directory.resolve((Path) event.context());
+        var name = path.getFileName().toString();
+        if (name.startsWith(".") || name.endsWith("~")) continue;
+        changes.add(path);
+        if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path)) {
+          registerQuietly(path);
+        }
+      }
+      if (!key.reset()) directories.remove(key); // directory deleted
+      key = service.poll(debounce.toMillis(), TimeUnit.MILLISECONDS);
+    }
+    return changes;
+  }
+
+  @Override
+  public void close() {
+    try {
+      service.close();
+    } catch (IOException | ClosedWatchServiceException exception) {
+      // nothing left to watch
+    }
+  }
+
+  private void register(Path root) throws IOException {
+    try (var stream = Files.walk(root)) {
+      for (var directory : stream.filter(Files::isDirectory).toList()) {
+        var key =
+            directory.register(
+                service,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_DELETE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+        directories.put(key, directory);
+      }
+    }
+  }
+
+  private void registerQuietly(Path directory) {
+    try {
+      register(directory);
+    } catch (IOException exception) {
+      // deleted again before it could be registered
+    }
+  }
+}
@@ -0,0 +1,85 @@
+package run.workflow;
+
+import java.lang.module.ModuleFinder;
+import java.lang.module.ModuleReference;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Selects test modules affected by changes since their last successful run.
+ *
+ * <p>A test module is affected if its own modular JAR file or the JAR file of any module it
+ * requires, directly or indirectly, changed. Each JAR file is fingerprinted by the names and CRC-32
+ * values of its entries, ignoring timestamps; each exploded module directory by the names and
+ * contents of its files. The fingerprint of a test module combines the
+ * fingerprints of all modules in its closure and is recorded in a manifest after the test module
+ * passed.
+ */
+public final class TestImpact {
+  private final ModuleFinder finder;
+  private final Fingerprints manifest;
+  private final Map<String, String> digests = new HashMap<>();
+
+  /**
+   * Creates a test impact analysis.
+   *
+   * @param modulePath directories and modular JAR files containing test, main, and library modules
+   * @param manifest the file storing fingerprints of passed test modules
+   */
+  public TestImpact(List<Path> modulePath, Path manifest) {
+    this.finder = ModuleFinder.of(modulePath.toArray(Path[]::new));
+    this.manifest = Fingerprints.load(manifest);
+  }
+
+  /** {@return the given test modules that changed or require a changed module, sorted by name} */
+  public Set<String> affected(Collection<String> modules) {
+    var affected = new TreeSet<String>();
+    for (var module : modules) {
+      var recorded = manifest.get(module);
+      if (recorded.isEmpty() || !recorded.get().equals(fingerprint(module))) affected.add(module);
+    }
+    return affected;
+  }
+
+  /** Records the current fingerprints of the given test modules, after they passed. */
+  public void commit(Collection<String> modules) {
+    for (var module : modules) manifest.put(module, fingerprint(module));
+    manifest.store();
+  }
+
+  /** {@return a fingerprint of the module and all modules it requires, directly or indirectly} */
+  public String fingerprint(String module) {
+    var digest = Digest.sha256();
+    for (var name : closure(module)) {
+      digest.add(name).add(digests.computeIfAbsent(name, this::digest));
+    }
+    return digest.toHexString();
+  }
+
+  private Set<String> closure(String module) {
+    var closure = new TreeSet<String>();
+    var pending = new ArrayList<>(List.of(module));
+    while (!pending.isEmpty()) {
+      var current = pending.removeLast();
+      if (!closure.add(current)) continue;
+      var reference = finder.find(current);
+      if (reference.isEmpty()) continue; // a system module, or missing
+      for (var requires : reference.get().descriptor().requires()) pending.add(requires.name());
+    }
+    return closure;
+  }
+
+  private String digest(String module) {
+    var file = finder.find(module).flatMap(ModuleReference::location).map(Path::of);
+    if (file.isEmpty()) return Runtime.version().toString(); // system module
+    if (Files.isDirectory(file.get())) return Digest.sha256().addTree(file.get()).toHexString();
+    return Digest.sha256().addEntries(file.get()).toHexString();
+  }
+}
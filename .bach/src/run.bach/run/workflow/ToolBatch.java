@@ -0,0 +1,188 @@
+package run.workflow;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.spi.ToolProvider;
+import run.bach.ToolCall;
+import run.bach.ToolRunner;
+
+/**
+ * A set of tool calls run concurrently, each as soon as all calls it is ordered after are done.
+ *
+ * <p>Calls are dispatched on virtual threads to a tool runner, usually the runner of a workflow,
+ * so that its tool finder and its announce and verify hooks apply to each call. Tools provided by a
+ * {@link ToolProvider} run in-process, at most as many at the same time as processors are
+ * available. Other tools, like tool programs and executables, run as processes; at most {@code
+ * processes} of them run at the same time. The output of each call is captured and printed as one
+ * block, in the order the calls were added; a silent runner avoids printing it twice. A call
+ * ordered after a failed call is skipped. All failures are reported by a single exception.
+ */
+public final class ToolBatch {
+  /** {@return an empty batch running as many processes as processors are available} */
+  public static ToolBatch ofAvailableProcessors(ToolRunner runner) {
+    var processors = Runtime.getRuntime().availableProcessors();
+    return new ToolBatch(runner, Integer.getInteger("-Dprocesses".substring(2), processors));
+  }
+
+  /** The outcome of a call that ran. */
+  public record Result(String id, ToolCall call, int code, String output, Duration duration) {}
+
+  private record Entry(String id, ToolCall call, Set<String> after) {}
+
+  private final ToolRunner runner;
+  private final int processes;
+  private final Map<String, Entry> entries = new LinkedHashMap<>();
+
+  public ToolBatch(ToolRunner runner, int processes) {
+    if (processes < 1) throw new IllegalArgumentException("processes < 1: " + processes);
+    this.runner = runner;
+    this.processes = processes;
+  }
+
+  /** Adds a call identified by its tool name and position in this batch. */
+  public ToolBatch add(ToolCall call) {
+    return add(call.tool().name() + "#" + (entries.size() + 1), call);
+  }
+
+  /**
+   * Adds a call that runs after all calls with the given ids are done successfully.
+   *
+   * @param id the unique id of the call
+   * @param call the tool call to run
+   * @param after ids of calls previously added to this batch
+   */
+  public ToolBatch add(String id, ToolCall call, String... after) {
+    for (var other : after) {
+      if (entries.containsKey(other)) continue;
+      throw new IllegalArgumentException("Unknown id %s in after-set of %s".formatted(other, id));
+    }
+    if (entries.putIfAbsent(id, new Entry(id, call, Set.of(after))) == null) return this;
+    throw new IllegalArgumentException("Duplicate id: " + id);
+  }
+
+  /** Runs all calls of this batch and returns their results in the order they were added. */
+  public List<Result> run() {
+    var threads = new Semaphore(Runtime.getRuntime().availableProcessors());
+    var permits = new Semaphore(processes);
+    var printer = new Printer(List.copyOf(entries.keySet()));
+    var results = new ConcurrentHashMap<String, Result>();
+    var failures = new ConcurrentHashMap<String, RuntimeException>();
+    var futures = new HashMap<String, CompletableFuture<Void>>();
+    try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      for (var entry : entries.values()) {
+        var after = entry.after().stream().map(futures::get).toList();
+        Runnable task =
+            () -> {
+              var provided = ToolProvider.findFirst(entry.call().tool().name()).isPresent();
+              var result = execute(entry, provided ? threads : permits);
+              results.put(entry.id(), result);
+              printer.print(results);
+              if (result.code() == 0) return;
+              var message = "%s failed with error code %d".formatted(entry.id(), result.code());
+              var exception = new RuntimeException(message);
+              failures.put(entry.id(), exception);
+              throw exception;
+            };
+        var future =
+            CompletableFuture.allOf(after.toArray(CompletableFuture<?>[]::new))
+                .thenRunAsync(task, executor);
+        futures.put(entry.id(), future);
+      }
+      CompletableFuture.allOf(futures.values().toArray(CompletableFuture<?>[]::new))
+          .exceptionally(_ -> null)
+          .join();
+    }
+    printer.printAll(results); // including results following skipped calls
+    if (failures.isEmpty()) return entries.keySet().stream().map(results::get).toList();
+    var sorted = new TreeMap<>(failures);
+    var skipped = entries.size() - results.size();
+    var message = "%d call(s) failed: %s".formatted(sorted.size(), sorted.keySet());
+    if (skipped > 0) message += ", %d skipped".formatted(skipped);
+    var exception = new RuntimeException(message);
+    sorted.values().forEach(exception::addSuppressed);
+    throw exception;
+  }
+
+  private Result execute(Entry entry, Semaphore permits) {
+    var call = entry.call();
+    var event = new BuildEvents.ToolCallEvent();
+    event.begin();
+    var start = System.nanoTime();
+    int code;
+    String output;
+    permits.acquireUninterruptibly();
+    try {
+      var run = runner.run(call);
+      code = run.code();
+      output = join(run.out(), run.err());
+    } catch (RuntimeException exception) {
+      // the runner's verify hook rejected the run, or the tool was not found
+      code = -1;
+      output = exception.toString();
+    } finally {
+      permits.release();
+    }
+    var duration = Duration.ofNanos(System.nanoTime() - start);
+    event.end();
+    if (event.shouldCommit()) {
+      event.tool = call.tool().name();
+      event.kind = "batch";
+      event.arguments = call.arguments().size();
+      event.code = code;
+      event.output = output.length();
+      event.commit();
+    }
+    return new Result(entry.id(), call, code, output, duration);
+  }
+
+  private static String join(String out, String err) {
+    if (err.isBlank()) return out;
+    if (out.isBlank()) return err;
+    return out.strip() + System.lineSeparator() + err;
+  }
+
+  /** Prints results in the order their calls were added, as soon as all earlier ones are done. */
+  private static final class Printer {
+    private final List<String> ids;
+    private int next;
+
+    Printer(List<String> ids) {
+      this.ids = ids;
+    }
+
+    synchronized void print(Map<String, Result> results) {
+      for (; next < ids.size() && results.containsKey(ids.get(next)); next++) {
+        ToolBatch.print(results.get(ids.get(next)));
+      }
+    }
+
+    synchronized void printAll(Map<String, Result> results) {
+      for (; next < ids.size(); next++) {
+        var result = results.get(ids.get(next));
+        if (result != null) ToolBatch.print(result);
+      }
+    }
+  }
+
+  private static void print(Result result) {
+    var call = result.call();
+    var lines = new StringBuilder();
+    lines.append(("| " + call.tool().name() + " " + String.join(" ", call.arguments())).strip());
+    lines.append(" [%d ms]".formatted(result.duration().toMillis()));
+    var output = result.output().strip();
+    if (!output.isEmpty()) lines.append(System.lineSeparator()).append(output);
+    var stream = result.code() == 0 ? System.out : System.err;
+    synchronized (System.out) {
+      stream.println(lines);
+    }
+  }
+}
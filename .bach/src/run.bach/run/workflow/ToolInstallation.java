@@ -0,0 +1,115 @@
+package run.workflow;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Installs tool files into a directory exactly once, even with concurrent threads and processes.
+ *
+ * <p>Within a JVM, installs of the same directory are single-flight: one thread installs while
+ * others wait for it and share its result. Across JVMs, installs are coordinated by a lock file
+ * next to the directory, held via {@link FileChannel#lock()}. Files are written into a temporary
+ * sibling directory and moved into place atomically, followed by a {@value #MARKER} marker file.
+ * Directories with a marker are considered complete; once seen, they are remembered and only
+ * probed for their marker file, which is installed again when the directory has been deleted.
+ */
+public final class ToolInstallation {
+  /** The name of the file marking a completed installation. */
+  public static final String MARKER = ".installed";
+
+  /** Writes tool files into an empty staging directory. */
+  @FunctionalInterface
+  public interface Installer {
+    void install(Path directory) throws Exception;
+  }
+
+  private static final Set<Path> INSTALLED = ConcurrentHashMap.newKeySet();
+  private static final Map<Path, ReentrantLock> FLIGHTS = new ConcurrentHashMap<>();
+
+  private ToolInstallation() {}
+
+  /**
+   * Ensures the given directory contains a completed installation.
+   *
+   * @param directory the installation directory
+   * @param installer writes tool files into a staging directory, called at most once
+   * @return the installation directory
+   */
+  public static Path ensure(Path directory, Installer installer) {
+    var home = directory.toAbsolutePath().normalize();
+    if (remembered(home)) return home;
+    var event = new BuildEvents.InstallEvent();
+    event.begin();
+    event.directory = home.toString();
+    var flight = FLIGHTS.computeIfAbsent(home, _ -> new ReentrantLock());
+    flight.lock(); // file locks are held per JVM, serialize threads first
+    try {
+      if (remembered(home)) return home;
+      if (Files.isRegularFile(home.resolve(MARKER))) return installed(home);
+      var parent = Files.createDirectories(home.getParent());
+      var name = home.getFileName().toString();
+      var options = new StandardOpenOption[] {StandardOpenOption.CREATE, StandardOpenOption.WRITE};
+      try (var channel = FileChannel.open(parent.resolve("." + name + ".lock"), options);
+          var _ = channel.lock()) {
+        if (Files.isRegularFile(home.resolve(MARKER))) return installed(home);
+        var staging = Files.createTempDirectory(parent, "." + name + "-");
+        try {
+          installer.install(staging);
+          Files.writeString(staging.resolve(MARKER), "");
+          move(staging, home);
+        } finally {
+          TreeDeleter.delete(staging);
+        }
+        event.installed = true;
+        return installed(home);
+      }
+    } catch (IOException exception) {
+      throw new UncheckedIOException("Install %s failed".formatted(home), exception);
+    } catch (RuntimeException exception) {
+      throw exception;
+    } catch (Exception exception) {
+      throw new RuntimeException("Install %s failed".formatted(home), exception);
+    } finally {
+      flight.unlock();
+      event.commit();
+    }
+  }
+
+  /** {@return whether the directory was seen completed and still contains its marker file} */
+  private static boolean remembered(Path home) {
+    if (!INSTALLED.contains(home)) return false;
+    if (Files.isRegularFile(home.resolve(MARKER))) return true;
+    INSTALLED.remove(home); // deleted since, for example by a clean build
+    return false;
+  }
+
+  private static Path installed(Path home) {
+    INSTALLED.add(home);
+    return home;
+  }
+
+  /** Moves the staging directory into place, or its entries if a partial install exists. */
+  private static void move(Path staging, Path home) throws IOException {
+    if (Files.notExists(home)) {
+      Files.move(staging, home, StandardCopyOption.ATOMIC_MOVE);
+      return;
+    }
+    try (var stream = Files.list(staging)) {
+      for (var source : stream.filter(path -> !path.endsWith(MARKER)).toList()) {
+        var target = home.resolve(source.getFileName().toString());
+        if (Files.isDirectory(target)) TreeDeleter.delete(target);
+        Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+      }
+    }
+    Files.move(staging.resolve(MARKER), home.resolve(MARKER), StandardCopyOption.ATOMIC_MOVE);
+  }
+}
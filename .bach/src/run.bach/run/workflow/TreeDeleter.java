@@ -0,0 +1,144 @@
+package run.workflow;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Predicate;
+
+/**
+ * Deletes directory trees depth-first without collecting all paths of a tree up front.
+ *
+ * <p>Symbolic links are deleted, never followed. The parallel mode forks a task per subdirectory
+ * into the common fork-join pool. The background mode renames a tree into a trash directory next
+ * to it and returns immediately, while a daemon thread deletes the trash directory. The JVM doesn't
+ * wait for that thread: trees left over by an earlier, terminated, process are deleted by the next
+ * background deletion.
+ */
+public final class TreeDeleter {
+  public static final String TRASH = ".trash";
+
+  /** Deletes the given file or directory tree sequentially. */
+  public static void delete(Path path) {
+    if (Files.notExists(path, LinkOption.NOFOLLOW_LINKS)) return;
+    check(path);
+    try {
+      Files.walkFileTree(path, new Visitor());
+    } catch (NoSuchFileException exception) {
+      // deleted concurrently
+    } catch (IOException exception) {
+      throw new UncheckedIOException("Delete %s failed".formatted(path), exception);
+    }
+  }
+
+  /** Deletes the given file or directory tree with subtrees processed in parallel. */
+  public static void deleteInParallel(Path path) {
+    if (Files.notExists(path, LinkOption.NOFOLLOW_LINKS)) return;
+    check(path);
+    ForkJoinPool.commonPool().invoke(new Task(path));
+  }
+
+  /**
+   * Moves the given tree into the trash and deletes it in the background.
+   *
+   * <p>Falls back to deleting in parallel, if the tree can't be moved into the trash atomically.
+   */
+  public static void deleteInBackground(Path path) {
+    if (Files.notExists(path, LinkOption.NOFOLLOW_LINKS)) return;
+    check(path);
+    var trash = path.toAbsolutePath().normalize().resolveSibling(TRASH);
+    var target = trash.resolve(UUID.randomUUID().toString());
+    try {
+      Files.createDirectories(trash);
+      Files.move(path, target, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException exception) {
+      // not on the same file store, or the trash directory was deleted concurrently
+      deleteInParallel(path);
+      return;
+    }
+    // a daemon thread: don't delay the JVM's exit, the next run empties the trash
+    Thread.ofPlatform().name("trash-deleter").daemon().start(() -> emptyTrash(trash, target));
+  }
+
+  private static void emptyTrash(Path trash, Path target) {
+    try {
+      deleteInParallel(target);
+      prune(trash, _ -> true); // left over by an earlier, terminated, process
+      Files.deleteIfExists(trash);
+    } catch (IOException | RuntimeException exception) {
+      // best-effort, another process may be deleting trash concurrently
+    }
+  }
+
+  /** Deletes all entries of the given directory that match the given filter. */
+  public static void prune(Path directory, Predicate<Path> filter) {
+    if (!Files.isDirectory(directory)) return;
+    try (var stream = Files.list(directory)) {
+      stream.filter(filter).forEach(TreeDeleter::deleteInParallel);
+    } catch (IOException exception) {
+      throw new UncheckedIOException("Prune %s failed".formatted(directory), exception);
+    }
+  }
+
+  private static void check(Path path) {
+    var absolute = path.toAbsolutePath().normalize();
+    if (absolute.getParent() == null) throw new IllegalArgumentException("Root: " + path);
+  }
+
+  private static final class Visitor extends SimpleFileVisitor<Path> {
+    @Override
+    public FileVisitResult visitFile(Path file, BasicFileAttributes attributes)
+        throws IOException {
+      Files.deleteIfExists(file);
+      return FileVisitResult.CONTINUE;
+    }
+
+    @Override
+    public FileVisitResult postVisitDirectory(Path directory, IOException exception)
+        throws IOException {
+      if (exception != null) throw exception;
+      Files.deleteIfExists(directory);
+      return FileVisitResult.CONTINUE;
+    }
+  }
+
+  @SuppressWarnings("serial") // never serialized
+  private static final class Task extends RecursiveAction {
+    private final Path path;
+
+    private Task(Path path) {
+      this.path = path;
+    }
+
+    @Override
+    protected void compute() {
+      try {
+        if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+          var subtasks = new ArrayList<Task>();
+          try (var stream = Files.newDirectoryStream(path)) {
+            for (var entry : stream) {
+              if (!Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) Files.deleteIfExists(entry);
+              else subtasks.add(new Task(entry));
+            }
+          }
+          invokeAll(subtasks);
+        }
+        Files.deleteIfExists(path);
+      } catch (NoSuchFileException exception) {
+        // deleted concurrently
+      } catch (IOException exception) {
+        throw new UncheckedIOException("Delete %s failed".formatted(path), exception);
+      }
+    }
+  }
+}
@@ -7,8 +7,14 @@
 
 import java.io.*;
 import java.net.*;
+import java.net.http.*;
 import java.nio.file.*;
+import java.nio.file.attribute.*;
+import java.security.*;
 import java.util.*;
+import java.util.regex.*;
+import java.util.spi.*;
+import java.util.zip.*;
 
 @SuppressWarnings("unused")
 interface Bach {
@@ -17,6 +23,13 @@ interface Bach {
       var build = Path.of("build");
       if (Files.isRegularFile(build)) {
         System.out.println("Running java @build ...");
+        // launch a main source file via the launcher cache, pass other arguments to java
+        var args = Internal.arguments(build);
+        var main = args.isEmpty() ? null : Path.of(args.getFirst());
+        if (main != null && main.toString().endsWith(".java") && Files.isRegularFile(main)) {
+          Internal.launch(main, args.subList(1, args.size()).toArray(String[]::new));
+          return;
+        }
         Internal.java("@" + build);
         return;
       }
@@ -34,7 +47,7 @@ interface Bach {
       for (var build : candidates) {
         if (Files.isRegularFile(build)) {
           System.out.println("Running java " + build + " ...");
-          Internal.java(build.toString());
+          Internal.launch(build);
           return;
         }
       }
@@ -42,11 +55,42 @@ interface Bach {
       System.out.println("  Create a `Build.java` file to enable it.");
     }
     // zero-configuration
-    System.out.println("TODO: java @bach build");
-    System.out.println("TODO: java .bach/src/run/bach/Main.java build");
-    System.out.println("TODO: java .bach/src/run.bach/run/bach/Main.java build");
+    /* java @bach build */ {
+      var bach = Path.of("bach");
+      if (Files.isRegularFile(bach)) {
+        System.out.println("Running java @bach build ...");
+        Internal.java("@" + bach, "build");
+        return;
+      }
+    }
+    /* java Main.java build */ {
+      var candidates =
+          List.of(
+              Path.of(".bach/src/run/bach/Main.java"),
+              Path.of(".bach/src/run.bach/run/bach/Main.java"));
+      for (var main : candidates) {
+        if (Files.isRegularFile(main)) {
+          System.out.println("Running java " + main + " build ...");
+          Internal.launch(main, "build");
+          return;
+        }
+      }
+    }
     // zero-installation + zero-configuration
-    System.out.println("TODO: init(temp) && java ${temp}/.bach/src/run/bach/Main.java build");
+    try {
+      var temp = Files.createTempDirectory("bach-");
+      try {
+        var installer = new Installer(Installer.VERSION, temp, Installer.PATH);
+        installer.installSources();
+        var main = temp.resolve(Installer.PATH).resolve("Main.java");
+        System.out.println("Running java " + main + " build ...");
+        Internal.launch(main, "build");
+      } finally {
+        Internal.delete(temp);
+      }
+    } catch (Exception exception) {
+      throw new RuntimeException("Zero-installation build failed", exception);
+    }
   }
 
   static void init() {
@@ -80,21 +124,25 @@ interface Bach {
 
   interface Internal {
     boolean DEBUG = Boolean.getBoolean("-Debug".substring(2));
+    Path LAUNCHER = Path.of(".bach", "out", "launcher");
+    Pattern PACKAGE = Pattern.compile("(?m)^\\s*package\\s+([\\w.]+)\\s*;");
+    Pattern MODULE = Pattern.compile("(?m)^\\s*(?:open\\s+)?module\\s+([\\w.]+)");
+    // shared by all requests: negotiates HTTP/2 and reuses connections
+    HttpClient HTTP_CLIENT =
+        HttpClient.newBuilder().followRedirects(HttpClient.Redirect.NORMAL).build();
 
     static void debug(String message) {
       if (DEBUG) System.out.println(message);
     }
 
-    static void copy(String source, Path target, CopyOption... options) throws Exception {
-      debug("<< %s".formatted(source));
-      Files.createDirectories(target.getParent());
-      try (var stream =
-          source.startsWith("http")
-              ? URI.create(source).toURL().openStream()
-              : Files.newInputStream(Path.of(source))) {
-        var size = Files.copy(stream, target, options);
-        debug(">> %,7d %s".formatted(size, target.getFileName()));
-      }
+    static InputStream open(String source) throws Exception {
+      if (!source.startsWith("http")) return Files.newInputStream(Path.of(source));
+      var request = HttpRequest.newBuilder(URI.create(source)).build();
+      var response = HTTP_CLIENT.send(request, HttpResponse.BodyHandlers.ofInputStream());
+      debug("%d <- GET %s".formatted(response.statusCode(), source));
+      if (response.statusCode() == 200) return response.body();
+      response.body().close();
+      throw new IOException("HTTP %d <- GET %s".formatted(response.statusCode(), source));
     }
 
     static void delete(Path path) throws Exception {
@@ -107,24 +155,162 @@ interface Bach {
         }
       }
       debug("delete directory tree " + start);
-      try (var stream = Files.walk(start)) {
-        var files = stream.sorted((p, q) -> -p.compareTo(q));
-        for (var file : files.toArray(Path[]::new)) Files.deleteIfExists(file);
-      }
+      // depth-first, without collecting and sorting all paths of the tree up front
+      Files.walkFileTree(
+          start,
+          new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes)
+                throws IOException {
+              Files.deleteIfExists(file);
+              return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path directory, IOException exception)
+                throws IOException {
+              if (exception != null) throw exception;
+              Files.deleteIfExists(directory);
+              return FileVisitResult.CONTINUE;
+            }
+          });
     }
 
     static boolean head(String source) throws Exception {
-      var url = URI.create(source).toURL();
-      var con = (HttpURLConnection) url.openConnection();
+      var request = HttpRequest.newBuilder(URI.create(source)).HEAD().build();
+      var response = HTTP_CLIENT.send(request, HttpResponse.BodyHandlers.discarding());
+      var status = response.statusCode();
+      debug("%d <- HEAD %s".formatted(status, source));
+      return status < 299;
+    }
+
+    /**
+     * {@return the arguments of an argument file, or an empty list if it uses quotes}
+     *
+     * <p>Comments, starting with {@code #}, and blank lines are skipped.
+     */
+    static List<String> arguments(Path file) {
+      var lines = new ArrayList<String>();
       try {
-        con.setRequestMethod("HEAD");
-        var status = con.getResponseCode();
-        debug("%d <- HEAD %s".formatted(status, source));
-        if (status < 299) return true;
-      } finally {
-        con.disconnect();
+        lines.addAll(Files.readAllLines(file));
+      } catch (IOException exception) {
+        throw new UncheckedIOException(exception);
+      }
+      var arguments = new ArrayList<String>();
+      for (var line : lines) {
+        var text = line.contains("#") ? line.substring(0, line.indexOf('#')) : line;
+        if (text.contains("\"") || text.contains("'")) return List.of();
+        for (var argument : text.strip().split("\\s+")) {
+          if (!argument.isEmpty()) arguments.add(argument);
+        }
       }
-      return false;
+      return List.copyOf(arguments);
+    }
+
+    /**
+     * Launches a Java source file like the source-code launcher does, but compiles it only once.
+     *
+     * <p>Compiled classes are cached in a directory below {@code .bach/out/launcher/MAIN-CLASS}
+     * named after a hash of the source file and all other source files javac loaded while compiling
+     * it. Paths of those source files are recorded in a {@code sources} file next to the cached
+     * classes, which are reused as long as none of the recorded source files changes.
+     */
+    static void launch(Path source, String... args) {
+      try {
+        var text = Files.readString(source);
+        var packageMatcher = PACKAGE.matcher(text);
+        var packageName = packageMatcher.find() ? packageMatcher.group(1) : "";
+        var root = source.toAbsolutePath().normalize().getParent();
+        if (!packageName.isEmpty()) {
+          for (int i = 0; i < packageName.split("\\.").length; i++) root = root.getParent();
+        }
+        var simpleName = source.getFileName().toString().replace(".java", "");
+        var mainClass = packageName.isEmpty() ? simpleName : packageName + "." + simpleName;
+        var cache = LAUNCHER.resolve(mainClass);
+        var moduleInfo = root.resolve("module-info.java");
+        var modular = Files.isRegularFile(moduleInfo);
+        var classes = cached(cache, root, source);
+        if (classes == null) classes = compile(root, source, modular ? moduleInfo : null, cache);
+        var command = new ArrayList<String>();
+        if (modular) {
+          var moduleMatcher = MODULE.matcher(Files.readString(moduleInfo));
+          if (!moduleMatcher.find()) throw new IllegalStateException("No module in " + moduleInfo);
+          command.addAll(List.of("--module-path", classes.toString()));
+          command.addAll(List.of("--module", moduleMatcher.group(1) + "/" + mainClass));
+        } else {
+          command.addAll(List.of("--class-path", classes.toString(), mainClass));
+        }
+        command.addAll(List.of(args));
+        java(command.toArray(String[]::new));
+      } catch (RuntimeException exception) {
+        throw exception;
+      } catch (Exception exception) {
+        throw new RuntimeException("Launch %s failed".formatted(source), exception);
+      }
+    }
+
+    /** {@return the cached classes directory, or null if a recorded source file changed} */
+    static Path cached(Path cache, Path root, Path source) throws Exception {
+      var sources = cache.resolve("sources");
+      if (!Files.isRegularFile(sources)) return null;
+      var files = Files.readAllLines(sources).stream().map(root::resolve).toList();
+      var classes = cache.resolve(hash(root, source, files));
+      return Files.isDirectory(classes) ? classes : null;
+    }
+
+    static String hash(Path root, Path source, List<Path> files) throws Exception {
+      var digest = MessageDigest.getInstance("SHA-256");
+      digest.update(Runtime.version().toString().getBytes());
+      digest.update(source.getFileName().toString().getBytes());
+      for (var file : files.stream().sorted().toList()) {
+        digest.update(root.relativize(file).toString().getBytes());
+        digest.update(Files.isRegularFile(file) ? Files.readAllBytes(file) : new byte[0]);
+      }
+      return HexFormat.of().formatHex(digest.digest());
+    }
+
+    static Path compile(Path root, Path source, Path moduleInfo, Path cache) throws Exception {
+      var parent = Files.createDirectories(cache);
+      var temp = parent.resolve("classes.tmp");
+      debug("compile %s into %s".formatted(source, temp));
+      delete(temp);
+      var args = new ArrayList<>(List.of("-proc:none", "-d", temp.toString()));
+      args.addAll(List.of("--source-path", root.toString()));
+      var compiler = javax.tools.ToolProvider.getSystemJavaCompiler();
+      var manager = compiler.getStandardFileManager(null, null, null);
+      var units = new ArrayList<File>();
+      if (moduleInfo != null) units.add(moduleInfo.toFile());
+      units.add(source.toFile());
+      var task =
+          (com.sun.source.util.JavacTask)
+              compiler.getTask(
+                  null, manager, null, args, null, manager.getJavaFileObjectsFromFiles(units));
+      // record all source files javac parses, including those loaded from the source path
+      var files = new TreeSet<Path>();
+      task.addTaskListener(
+          new com.sun.source.util.TaskListener() {
+            @Override
+            public void started(com.sun.source.util.TaskEvent event) {
+              if (event.getKind() != com.sun.source.util.TaskEvent.Kind.PARSE) return;
+              files.add(Path.of(event.getSourceFile().toUri()).toAbsolutePath().normalize());
+            }
+          });
+      if (!task.call()) throw new RuntimeException("Compilation failed: " + source);
+      manager.close();
+      var classes = parent.resolve(hash(root, source, List.copyOf(files)));
+      var sources = files.stream().map(file -> root.relativize(file).toString()).toList();
+      Files.write(parent.resolve("sources"), sources);
+      try {
+        Files.move(temp, classes, StandardCopyOption.ATOMIC_MOVE);
+      } catch (FileAlreadyExistsException | DirectoryNotEmptyException concurrentlyCompiled) {
+        delete(temp);
+      }
+      // remove stale caches of this launcher, other launchers are cached in sibling directories
+      try (var stream = Files.list(parent)) {
+        var stale = stream.filter(path -> !path.equals(classes)).filter(Files::isDirectory);
+        for (var directory : stale.toList()) delete(directory);
+      }
+      return classes;
     }
 
     static void java(String... args) {
@@ -138,10 +324,16 @@ interface Bach {
       debug("| " + String.join(" ", command));
       var out = System.out;
       var err = System.err;
-      record LinePrinter(InputStream stream, PrintStream writer) implements Runnable {
+      // pump bytes in bulk, without decoding and re-encoding each line
+      record BytePump(InputStream stream, PrintStream target) implements Runnable {
         @Override
         public void run() {
-          new BufferedReader(new InputStreamReader(stream)).lines().forEach(writer::println);
+          try (stream) {
+            stream.transferTo(target);
+            target.flush();
+          } catch (IOException exception) {
+            exception.printStackTrace(target);
+          }
         }
       }
       var processBuilder = new ProcessBuilder(new ArrayList<>(command));
@@ -149,9 +341,12 @@ interface Bach {
       try {
         var process = processBuilder.start();
         var threadBuilder = Thread.ofVirtual();
-        threadBuilder.name("-out").start(new LinePrinter(process.getInputStream(), out));
-        threadBuilder.name("-err").start(new LinePrinter(process.getErrorStream(), err));
-        return process.isAlive() ? process.waitFor() : process.exitValue();
+        var outPump = threadBuilder.name("-out").start(new BytePump(process.getInputStream(), out));
+        var errPump = threadBuilder.name("-err").start(new BytePump(process.getErrorStream(), err));
+        var code = process.waitFor();
+        outPump.join();
+        errPump.join();
+        return code;
       } catch (InterruptedException exception) {
         Thread.currentThread().interrupt();
         return -1;
@@ -161,27 +356,33 @@ interface Bach {
       }
     }
 
-    static void unzip(Path zip, Path dir, int sub) throws Exception {
-      debug("<< %s".formatted(zip.toUri()));
+    /** Extracts entries decoded from the stream, without storing the archive itself. */
+    static void unzip(InputStream stream, Path dir, int sub) throws Exception {
       debug(">> %s".formatted(dir.toUri()));
-      var files = new ArrayList<Path>();
-      try (var fs = FileSystems.newFileSystem(zip)) {
-        for (var root : fs.getRootDirectories()) {
-          try (var stream = Files.walk(root)) {
-            var list = stream.filter(Files::isRegularFile).toList();
-            for (var file : list) {
-              var relative = root.relativize(file);
-              var source = sub == 0 ? relative : relative.subpath(sub, relative.getNameCount());
-              var target = dir.resolve(source.toString());
-              // debug(target.toUri().toString());
-              Files.createDirectories(target.getParent());
-              Files.copy(file, target, StandardCopyOption.REPLACE_EXISTING);
-              files.add(target);
-            }
-          }
+      var count = 0;
+      var directories = new HashSet<Path>();
+      try (var zip = new ZipInputStream(new BufferedInputStream(stream, 1 << 16))) {
+        for (var entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+          if (entry.isDirectory()) continue;
+          var target = target(dir, entry.getName(), sub);
+          if (target == null) continue;
+          if (directories.add(target.getParent())) Files.createDirectories(target.getParent());
+          Files.copy(zip, target, StandardCopyOption.REPLACE_EXISTING);
+          count++;
         }
       }
-      debug(">> %d files copied".formatted(files.size()));
+      debug(">> %d files extracted".formatted(count));
+    }
+
+    /** {@return target path of a zip entry with leading names dropped, or null if skipped} */
+    static Path target(Path dir, String name, int sub) {
+      var names = name.split("/");
+      if (names.length <= sub) return null;
+      var target = dir.resolve(String.join("/", Arrays.copyOfRange(names, sub, names.length)));
+      if (!target.normalize().startsWith(dir.normalize())) {
+        throw new IllegalArgumentException("Entry outside of target directory: " + name);
+      }
+      return target;
     }
   }
 
@@ -224,15 +425,13 @@ interface Bach {
     }
 
     void installSourcesFromUri(String uri) throws Exception {
-      var tmp = Files.createTempDirectory("run.bach-" + version + "-");
       var dir = Files.createDirectories(home.resolve(path));
-      var zip = tmp.resolve("run.bach-" + version + ".zip");
       System.out.println("Installing Bach [" + version + "] into " + path.toUri() + "...");
-      // download and unzip
-      Internal.copy(uri, zip, StandardCopyOption.REPLACE_EXISTING);
-      Internal.unzip(zip, dir, 1);
-      // clean up
-      Internal.delete(tmp);
+      // download and unzip in one pass
+      Internal.debug("<< %s".formatted(uri));
+      try (var stream = Internal.open(uri)) {
+        Internal.unzip(stream, dir, 1);
+      }
     }
 
     void installArgumentFiles() throws Exception {
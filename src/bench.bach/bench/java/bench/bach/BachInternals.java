@@ -0,0 +1,88 @@
+package bench.bach;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.spi.ToolProvider;
+
+/**
+ * Provides access to file operations of the {@code Bach.java} launcher's internal interface.
+ *
+ * <p>The launcher is a single source file in the unnamed package, it is compiled into a temporary
+ * directory and loaded in an isolated class loader. Its location defaults to {@code
+ * src/bach.run/Bach.java} and is configurable via {@code -Dbench.bach.java=PATH}.
+ */
+final class BachInternals {
+  private final Path classes;
+  private final Method unzip;
+  private final Method delete;
+
+  static BachInternals compile() {
+    var property = System.getProperty("-Dbench.bach.java".substring(2), "src/bach.run/Bach.java");
+    var source = Path.of(property);
+    try {
+      var classes = Files.createTempDirectory("bench-bach-java-");
+      var javac = ToolProvider.findFirst("javac").orElseThrow();
+      var args = new String[] {"-d", classes.toString(), "-implicit:none", source.toString()};
+      var code = javac.run(System.out, System.err, args);
+      if (code != 0) throw new IllegalStateException("javac failed: " + code);
+      return new BachInternals(classes);
+    } catch (IOException exception) {
+      throw new UncheckedIOException("Compile %s failed".formatted(source), exception);
+    }
+  }
+
+  private BachInternals(Path classes) {
+    this.classes = classes;
+    try {
+      var urls = new URL[] {classes.toUri().toURL()};
+      var loader = new URLClassLoader(urls, ClassLoader.getPlatformClassLoader());
+      var internal = loader.loadClass("Bach$Internal");
+      this.unzip =
+          accessible(internal.getDeclaredMethod("unzip", InputStream.class, Path.class, int.class));
+      this.delete = accessible(internal.getDeclaredMethod("delete", Path.class));
+    } catch (ReflectiveOperationException exception) {
+      throw new IllegalStateException("Bach.java internals not found in " + classes, exception);
+    } catch (IOException exception) {
+      throw new UncheckedIOException(exception);
+    }
+  }
+
+  /** Extracts entries decoded from a stream, as done for installing Bach from a download. */
+  void unzip(InputStream stream, Path dir) {
+    invoke(unzip, stream, dir, 0);
+  }
+
+  /** Deletes a directory tree, depth-first. */
+  void delete(Path path) {
+    invoke(delete, path);
+  }
+
+  /** Deletes the compiled classes of the launcher. */
+  void close() {
+    delete(classes);
+  }
+
+  private static Method accessible(Method method) {
+    method.setAccessible(true); // Bach is a package-private interface
+    return method;
+  }
+
+  private static void invoke(Method method, Object... args) {
+    try {
+      method.invoke(null, args);
+    } catch (IllegalAccessException exception) {
+      throw new IllegalStateException(exception);
+    } catch (InvocationTargetException exception) {
+      var cause = exception.getCause();
+      if (cause instanceof RuntimeException runtime) throw runtime;
+      throw new IllegalStateException("%s failed".formatted(method.getName()), cause);
+    }
+  }
+}
@@ -0,0 +1,103 @@
+package bench.bach;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.spi.ToolProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import run.bach.ToolRunner;
+
+/** Measures compiling a generated project of modules, each requiring its predecessor. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class CompileBenchmarks {
+  @Param({"10"})
+  public int modules;
+
+  @Param({"20"})
+  public int classes;
+
+  private BachInternals bach;
+  private Path temp;
+  private List<String> arguments;
+
+  @Setup(Level.Trial)
+  public void generateProject() throws IOException {
+    bach = BachInternals.compile();
+    temp = Files.createTempDirectory("bench-compile-");
+    var names = new ArrayList<String>();
+    for (int m = 0; m < modules; m++) {
+      var module = ModuleResolutionBenchmarks.name(m);
+      names.add(module);
+      var root = Files.createDirectories(temp.resolve("src").resolve(module));
+      var previous = m == 0 ? "" : ModuleResolutionBenchmarks.name(m - 1);
+      var requires = m == 0 ? "" : "requires transitive %s;".formatted(previous);
+      var info = "module %s { %s exports %s; }".formatted(module, requires, module);
+      Files.writeString(root.resolve("module-info.java"), info);
+      var pkg = Files.createDirectories(root.resolve(module));
+      for (int c = 0; c < classes; c++) {
+        var uses = m == 0 ? "Object" : "%s.C%d".formatted(previous, c);
+        var text = "package %s; public class C%d { public %s value; }".formatted(module, c, uses);
+        Files.writeString(pkg.resolve("C" + c + ".java"), text);
+      }
+    }
+    arguments =
+        List.of(
+            "--module-source-path",
+            temp.resolve("src").toString(),
+            "--module",
+            String.join(",", names),
+            "-d",
+            temp.resolve("classes").toString());
+  }
+
+  @Setup(Level.Invocation)
+  public void deleteClasses() {
+    bach.delete(temp.resolve("classes"));
+  }
+
+  @TearDown(Level.Trial)
+  public void deleteProject() {
+    bach.delete(temp);
+    bach.close();
+  }
+
+  @Benchmark
+  public int compileWithToolProvider() {
+    var javac = ToolProvider.findFirst("javac").orElseThrow();
+    var out = new PrintWriter(new StringWriter());
+    return check(javac.run(out, out, arguments.toArray(String[]::new)));
+  }
+
+  @Benchmark
+  public int compileWithToolRunner() {
+    var runner = ToolRunner.ofSilence(); // throws on a non-zero exit code
+    return runner.run("javac", arguments.toArray(String[]::new)).code();
+  }
+
+  private static int check(int code) {
+    if (code != 0) throw new IllegalStateException("javac failed: " + code);
+    return code;
+  }
+}
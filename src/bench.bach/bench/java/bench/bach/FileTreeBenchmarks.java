@@ -0,0 +1,82 @@
+package bench.bach;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Measures extracting a generated archive and deleting the extracted tree with Bach.java. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+@Fork(1)
+public class FileTreeBenchmarks {
+  @Param({"1000"})
+  public int files;
+
+  private BachInternals bach;
+  private Path temp;
+  private Path archive;
+  private Path target;
+  private Path tree;
+
+  @Setup(Level.Trial)
+  public void createArchive() throws IOException {
+    bach = BachInternals.compile();
+    temp = Files.createTempDirectory("bench-file-tree-");
+    archive = temp.resolve("archive.zip");
+    try (var zip = new ZipOutputStream(Files.newOutputStream(archive))) {
+      for (int i = 0; i < files; i++) {
+        zip.putNextEntry(new ZipEntry("d%02d/f%04d.txt".formatted(i % 32, i)));
+        zip.write(("file " + i + "\n").repeat(64).getBytes());
+        zip.closeEntry();
+      }
+    }
+    target = temp.resolve("extracted");
+    tree = temp.resolve("tree");
+  }
+
+  @Setup(Level.Invocation)
+  public void extractTree() throws IOException {
+    bach.delete(target);
+    bach.delete(tree);
+    try (var stream = Files.newInputStream(archive)) {
+      bach.unzip(stream, tree);
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void deleteTemp() {
+    bach.delete(temp);
+    bach.close();
+  }
+
+  @Benchmark
+  public void unzip() throws IOException {
+    try (var stream = Files.newInputStream(archive)) {
+      bach.unzip(stream, target);
+    }
+  }
+
+  @Benchmark
+  public void delete() {
+    bach.delete(tree);
+  }
+}
@@ -0,0 +1,114 @@
+package bench.bach;
+
+import com.sun.net.httpserver.HttpServer;
+import com.sun.net.httpserver.SimpleFileServer;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.spi.ToolProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import run.bach.ModuleLocator;
+import run.bach.ModuleResolver;
+
+/** Measures locating and resolving a chain of modules served by a local HTTP server. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+@Fork(1)
+public class ModuleResolutionBenchmarks {
+  @Param({"20"})
+  public int modules;
+
+  private BachInternals bach;
+  private Path temp;
+  private HttpServer server;
+  private ModuleLocator locator;
+  private Path lib;
+
+  @Setup(Level.Trial)
+  public void serveModules() throws IOException {
+    bach = BachInternals.compile();
+    temp = Files.createTempDirectory("bench-module-resolution-");
+    var repository = Files.createDirectories(temp.resolve("repository"));
+    for (int i = 0; i < modules; i++) {
+      var requires = i == 0 ? "" : "requires %s;".formatted(name(i - 1));
+      var source = Files.createDirectories(temp.resolve("src").resolve(name(i)));
+      var info = "module %s { %s }".formatted(name(i), requires);
+      Files.writeString(source.resolve("module-info.java"), info);
+      var classes = temp.resolve("classes").resolve(name(i));
+      var modulePath = temp.resolve("classes").toString();
+      var unit = source.resolve("module-info.java").toString();
+      run("javac", "-d", classes.toString(), "-p", modulePath, unit);
+      var file = repository.resolve(name(i) + ".jar").toString();
+      run("jar", "--create", "--file", file, "-C", classes.toString(), ".");
+    }
+    var address = new InetSocketAddress("127.0.0.1", 0);
+    var level = SimpleFileServer.OutputLevel.NONE;
+    server = SimpleFileServer.createFileServer(address, repository, level);
+    server.start();
+    // One locator per module, like libraries composed of many module mappings
+    var port = server.getAddress().getPort();
+    var locators = new ArrayList<ModuleLocator>();
+    for (int i = 0; i < modules; i++) {
+      var name = name(i);
+      var location = "http://127.0.0.1:%d/%s.jar".formatted(port, name);
+      locators.add(module -> module.equals(name) ? Optional.of(location) : Optional.empty());
+    }
+    locator = ModuleLocator.compose(locators.toArray(ModuleLocator[]::new));
+    lib = temp.resolve("lib");
+  }
+
+  @Setup(Level.Invocation)
+  public void deleteLibrary() {
+    bach.delete(lib);
+  }
+
+  @TearDown(Level.Trial)
+  public void stopServer() {
+    server.stop(0);
+    bach.delete(temp);
+    bach.close();
+  }
+
+  @Benchmark
+  public void resolveModule() {
+    var resolver = ModuleResolver.ofSingleDirectory(lib, locator);
+    resolver.resolveModule(name(modules - 1));
+    resolver.resolveMissingModules();
+  }
+
+  @Benchmark
+  public Object locateEachModule() {
+    Object last = null;
+    for (int i = 0; i < modules; i++) last = locator.locate(name(i));
+    return last;
+  }
+
+  static String name(int index) {
+    return "m" + index + "x"; // avoid terminal digits in module names
+  }
+
+  private static void run(String name, String... args) {
+    var tool = ToolProvider.findFirst(name).orElseThrow();
+    var code = tool.run(System.out, System.err, args);
+    if (code != 0) throw new IllegalStateException(name + " failed: " + code);
+  }
+}
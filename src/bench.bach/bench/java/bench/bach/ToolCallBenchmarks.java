@@ -0,0 +1,66 @@
+package bench.bach;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import run.bach.ToolCall;
+
+/** Measures building tool calls, with and without expanding a glob of source files. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ToolCallBenchmarks {
+  @Param({"100"})
+  public int files;
+
+  private BachInternals bach;
+  private Path tree;
+
+  @Setup(Level.Trial)
+  public void generateTree() throws IOException {
+    bach = BachInternals.compile();
+    tree = Files.createTempDirectory("bench-tool-call-");
+    for (int i = 0; i < files; i++) {
+      var directory = Files.createDirectories(tree.resolve("p%02d".formatted(i % 10)));
+      Files.writeString(directory.resolve("C%03d.java".formatted(i)), "class C {}");
+      Files.writeString(directory.resolve("R%03d.txt".formatted(i)), "resource");
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void deleteTree() {
+    bach.delete(tree);
+    bach.close();
+  }
+
+  @Benchmark
+  public ToolCall construct() {
+    return ToolCall.of("javac")
+        .add("--release", "22")
+        .add("--module", "run.bach")
+        .add("-d", ".bach/out/main/classes")
+        .add("-X" + "lint:all");
+  }
+
+  @Benchmark
+  public ToolCall addFilesGlob() {
+    return ToolCall.of("javac").addFiles(tree, "**.java");
+  }
+}
@@ -0,0 +1,46 @@
+package bench.bach;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import run.bach.Tool;
+import run.bach.ToolFinder;
+import run.bach.ToolRunner;
+
+/** Measures dispatching tool calls and looking up tools. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ToolRunnerBenchmarks {
+  private final ToolRunner runner = ToolRunner.ofSilence();
+
+  private final ToolFinder composed =
+      ToolFinder.compose(
+          ToolFinder.of(Tool.of("jar"), Tool.of("javac")),
+          ToolFinder.of(Tool.of("java"), Tool.of("jfr")));
+
+  @Benchmark
+  public int runProvider() {
+    return runner.run("jar", "--version").code(); // in-process tool provider
+  }
+
+  @Benchmark
+  public int runProgram() {
+    return runner.run("java", "--version").code(); // external process
+  }
+
+  @Benchmark
+  public Object findInComposedFinder() {
+    return composed.find("jfr");
+  }
+}
@@ -0,0 +1,7 @@
+/** Defines JMH benchmarks of Bach's hot paths. */
+open /*for generated harnesses*/ module bench.bach {
+  requires run.bach; // module under benchmark
+  requires jdk.httpserver; // for serving modules
+  requires jmh.core; // for writing benchmarks
+  requires static jmh.generator.annprocess; // for generating benchmark harnesses
+}
@@ -1,10 +1,67 @@
 package test.bach.workflow;
 
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.spi.ToolProvider;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordingFile;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
+import run.bach.Tool;
+import run.bach.ToolCall;
+import run.bach.ToolFinder;
+import run.bach.ToolRunner;
 import run.bach.workflow.Structure.Launcher;
+import run.workflow.ArchiveStep;
+import run.workflow.ArchiveSteps;
+import run.workflow.BuildCache;
+import run.workflow.BuildDaemon;
+import run.workflow.BuildEvents;
+import run.workflow.BuildTimeline;
+import run.workflow.ClassDataSharing;
+import run.workflow.CompilerService;
+import run.workflow.Digest;
+import run.workflow.IncrementalCompilation;
+import run.workflow.IndexedToolFinder;
+import run.workflow.JavaWorkerPool;
+import run.workflow.LayeredTestRunner;
+import run.workflow.ModuleGraph;
+import run.workflow.ModuleLocationIndex;
+import run.workflow.ModuleScheduler;
+import run.workflow.ModuleStore;
+import run.workflow.OutputCapture;
+import run.workflow.RemoteCache;
+import run.workflow.RemoteCacheServer;
+import run.workflow.ResolutionLock;
+import run.workflow.SourceWatcher;
+import run.workflow.TestImpact;
+import run.workflow.ToolBatch;
+import run.workflow.ToolInstallation;
+import run.workflow.TreeDeleter;
 
 class WorkflowTests {
   @Nested
@@ -18,4 +75,948 @@ class WorkflowTests {
       }
     }
   }
+
+  @Nested
+  class ModuleSchedulerTests {
+    // a <- b, a <- c, b <- d, c <- d
+    final ModuleGraph graph =
+        ModuleGraph.of(
+            List.of("d", "c", "b", "a"),
+            module ->
+                switch (module) {
+                  case "b", "c" -> Set.of("a");
+                  case "d" -> Set.of("b", "c");
+                  default -> Set.of();
+                });
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 4})
+    void modulesRunAfterAllModulesTheyRequire(int parallelism) {
+      var done = new CopyOnWriteArrayList<String>();
+      new ModuleScheduler(parallelism).run(graph, done::add);
+      Assertions.assertEquals(Set.of("a", "b", "c", "d"), Set.copyOf(done));
+      Assertions.assertEquals("a", done.getFirst());
+      Assertions.assertEquals("d", done.getLast());
+    }
+
+    @Test
+    void modulesRequiringFailedModulesAreSkipped() {
+      var done = new CopyOnWriteArrayList<String>();
+      var scheduler = new ModuleScheduler(2);
+      var exception =
+          Assertions.assertThrows(
+              RuntimeException.class,
+              () ->
+                  scheduler.run(
+                      graph,
+                      module -> {
+                        if (module.equals("b")) throw new IllegalStateException(module);
+                        done.add(module);
+                      }));
+      Assertions.assertEquals("1 module(s) failed: [b], 1 skipped", exception.getMessage());
+      Assertions.assertEquals(Set.of("a", "c"), Set.copyOf(done));
+    }
+  }
+
+  @Nested
+  class IncrementalCompilationTests {
+    @TempDir Path temp;
+
+    @Test
+    void onlyChangedModulesAndModulesRequiringThemAreAffected() throws IOException {
+      var src = temp.resolve("src");
+      writeModule(src, "a", "");
+      writeModule(src, "b", "requires a;");
+      writeModule(src, "c", "");
+      var classes = temp.resolve("classes");
+      var javac =
+          ToolCall.of("javac")
+              .add("--module-source-path", src.toString())
+              .add("-d", classes.toString())
+              .add("--module", "a,b,c");
+
+      var initial = IncrementalCompilation.of(javac);
+      Assertions.assertEquals(List.of("a", "b", "c"), List.copyOf(initial.affected()));
+      for (var module : List.of("a", "b", "c")) Files.createDirectories(classes.resolve(module));
+      initial.commit(initial.affected());
+      Assertions.assertEquals(Set.of(), IncrementalCompilation.of(javac).affected());
+
+      Files.writeString(src.resolve("a/a/A.java"), "package a; class A {}");
+      var changed = IncrementalCompilation.of(javac);
+      Assertions.assertEquals(List.of("a", "b"), List.copyOf(changed.affected()));
+    }
+  }
+
+  @Nested
+  class BuildDaemonTests {
+    @TempDir Path temp;
+
+    @Test
+    void daemonServesInvocationsUntilItReceivesAStaleStamp() throws Exception {
+      var socket = temp.resolve("daemon.socket");
+      var served = new CopyOnWriteArrayList<List<String>>();
+      var daemon =
+          Thread.ofPlatform()
+              .start(
+                  () -> {
+                    try {
+                      BuildDaemon.serve(
+                          socket, "stamp", Duration.ofMinutes(1), args -> served.add(args) ? 7 : 1);
+                    } catch (IOException exception) {
+                      throw new UncheckedIOException(exception);
+                    }
+                  });
+      while (Files.notExists(socket)) Thread.sleep(10);
+
+      Assertions.assertEquals(OptionalInt.of(7), BuildDaemon.invoke(socket, "stamp", "a", "b"));
+      Assertions.assertEquals(OptionalInt.empty(), BuildDaemon.invoke(socket, "other", "c"));
+      daemon.join();
+      Assertions.assertEquals(List.of(List.of("a", "b")), served);
+      Assertions.assertTrue(Files.notExists(socket));
+      Assertions.assertEquals(OptionalInt.empty(), BuildDaemon.invoke(socket, "stamp", "d"));
+    }
+
+    @Test
+    void idleDaemonStops() throws IOException {
+      var socket = temp.resolve("daemon.socket");
+      BuildDaemon.serve(socket, "stamp", Duration.ofMillis(10), _ -> 0);
+      Assertions.assertTrue(Files.notExists(socket));
+    }
+  }
+
+  @Nested
+  class BuildEventsTests {
+    @TempDir Path temp;
+
+    @Test
+    void installationsAreRecordedAsFlightRecorderEvents() throws IOException {
+      var home = temp.resolve("tool").toAbsolutePath().normalize();
+      var file = temp.resolve("build.jfr");
+      try (var recording = new Recording()) {
+        recording.enable("run.bach.Install");
+        recording.start();
+        ToolInstallation.ensure(home, directory -> {});
+        ToolInstallation.ensure(home, directory -> {});
+        recording.stop();
+        recording.dump(file);
+      }
+      var events = RecordingFile.readAllEvents(file);
+      Assertions.assertEquals(1, events.size());
+      var event = events.getFirst();
+      var categories = event.getEventType().getCategoryNames();
+      Assertions.assertEquals(List.of(BuildEvents.CATEGORY), categories);
+      Assertions.assertEquals(home.toString(), event.getString("directory"));
+      Assertions.assertTrue(event.getBoolean("installed"));
+    }
+  }
+
+  @Nested
+  class BuildTimelineTests {
+    // a <- b, a <- c, b <- d, c <- d, and e requiring nothing
+    final ModuleGraph graph =
+        ModuleGraph.of(
+            List.of("a", "b", "c", "d", "e"),
+            module ->
+                switch (module) {
+                  case "b", "c" -> Set.of("a");
+                  case "d" -> Set.of("b", "c");
+                  default -> Set.of();
+                });
+
+    @Test
+    void criticalPathFollowsTheModuleGraph() {
+      var a = span("a", 1, 0, 100);
+      var b = span("b", 1, 100, 150);
+      var c = span("c", 2, 100, 300);
+      var d = span("d", 1, 300, 350);
+      var e = span("e", 3, 120, 420);
+      var javac = new BuildTimeline.Span("javac", "tool", "2", 2, at(110), ms(180), "", "");
+      var timeline = new BuildTimeline(List.of(d, javac, c, b, a, e));
+      Assertions.assertEquals(List.of(a, e), timeline.criticalPath());
+
+      var chained = timeline.with(graph);
+      Assertions.assertEquals(List.of(a, c, d), chained.criticalPath());
+      Assertions.assertEquals(ms(420), chained.wallTime());
+      Assertions.assertEquals(Set.of(a, b, javac, d, e), Set.copyOf(chained.leaves()));
+      Assertions.assertEquals(680 / 420.0, chained.parallelism(), 1e-9);
+      Assertions.assertEquals(List.of(e, c), chained.slowest(2));
+    }
+
+    static BuildTimeline.Span span(String module, long thread, long start, long end) {
+      var name = "compile " + module;
+      return new BuildTimeline.Span(
+          name, "step", "" + thread, thread, at(start), ms(end - start), "main", module);
+    }
+
+    static Instant at(long millis) {
+      return Instant.EPOCH.plusMillis(millis);
+    }
+
+    static Duration ms(long millis) {
+      return Duration.ofMillis(millis);
+    }
+  }
+
+  @Nested
+  class ClassDataSharingTests {
+    @TempDir Path temp;
+
+    @Test
+    void imageIsTrainedOnlyIfItContainsTheArchiveAndItsScriptUsesIt() throws IOException {
+      var bin = Files.createDirectories(temp.resolve("bin"));
+      Files.writeString(bin.resolve("bach"), "JLINK_VM_OPTIONS=\n$JLINK_VM_OPTIONS -m m/m.Main");
+      var cds = ClassDataSharing.of(temp, "bach").orElseThrow();
+      Assertions.assertEquals("m/m.Main", cds.module());
+      Assertions.assertFalse(cds.trained());
+
+      Files.writeString(Files.createDirectories(cds.archive().getParent()).resolve("bach.jsa"), "");
+      Assertions.assertFalse(cds.trained());
+      cds.patchLauncherScripts();
+      Assertions.assertTrue(cds.trained());
+      Files.delete(cds.archive());
+      Assertions.assertFalse(cds.trained());
+    }
+  }
+
+  @Nested
+  class CompilerServiceTests {
+    @TempDir Path temp;
+
+    @Test
+    void reusedFileManagersSeeChangedModulePathEntries() throws IOException {
+      var service = CompilerService.shared();
+      var out = new PrintWriter(new StringWriter());
+      var lib = Files.createDirectories(temp.resolve("lib"));
+      writeModule(temp.resolve("a"), "a", "");
+      writeModule(temp.resolve("b"), "b", "requires a;");
+      var classes = temp.resolve("classes").toString();
+      var a = List.of("--module-source-path", temp + "/a", "-d", classes, "-m", "a");
+      var b =
+          List.of("--module-source-path", temp + "/b", "-p", lib + "", "-d", classes, "-m", "b");
+      Assertions.assertEquals(0, service.compile(a, out));
+      jar(lib.resolve("a.jar"), temp.resolve("classes/a"));
+      Assertions.assertEquals(0, service.compile(b, out));
+
+      Files.writeString(temp.resolve("b/b/b/User.java"), "package b; class User { a.Extra x; }");
+      Assertions.assertEquals(1, service.compile(b, out));
+      Files.writeString(temp.resolve("a/a/a/Extra.java"), "package a; public class Extra {}");
+      Assertions.assertEquals(0, service.compile(a, out));
+      jar(lib.resolve("a.jar"), temp.resolve("classes/a"));
+      Assertions.assertEquals(0, service.compile(b, out));
+    }
+
+    static void jar(Path file, Path classes) throws IOException {
+      Files.deleteIfExists(file);
+      var jar = ToolProvider.findFirst("jar").orElseThrow();
+      var args = List.of("--create", "--file", file.toString(), "-C", classes.toString(), ".");
+      Assertions.assertEquals(0, jar.run(System.out, System.err, args.toArray(String[]::new)));
+    }
+  }
+
+  @Nested
+  class ArchiveStepTests {
+    @TempDir Path temp;
+
+    @Test
+    void jarCallIsDescribedByItsOutputAndInputs() {
+      var arguments = List.of("--create", "--file", "out/a.jar", "-C", "classes/a", ".", "x.txt");
+      var step = ArchiveStep.of("jar", arguments).orElseThrow();
+      Assertions.assertEquals(Path.of("out/a.jar"), step.output());
+      Assertions.assertEquals(List.of(Path.of("classes/a"), Path.of("x.txt")), step.inputs());
+      var update = List.of("--update", "--file", "a.jar");
+      Assertions.assertTrue(ArchiveStep.of("jar", update).isEmpty());
+      Assertions.assertTrue(ArchiveStep.of("javac", List.of("-d", "classes")).isEmpty());
+    }
+
+    @Test
+    void stepIsUpToDateUntilAnInputChanges() throws IOException {
+      var classes = Files.createDirectories(temp.resolve("classes"));
+      Files.writeString(classes.resolve("X.class"), "X");
+      var jar = temp.resolve("a.jar");
+      var arguments = List.of("--create", "--file", jar.toString(), "-C", classes.toString(), ".");
+      var step = ArchiveStep.of("jar", arguments).orElseThrow();
+      var steps = new ArchiveSteps(temp.resolve("archives.properties"));
+
+      var initial = step.fingerprint();
+      Assertions.assertFalse(steps.upToDate(step, initial));
+      Files.writeString(jar, "jar");
+      steps.commit(step, initial);
+      var reloaded = new ArchiveSteps(temp.resolve("archives.properties"));
+      Assertions.assertTrue(reloaded.upToDate(step, step.fingerprint()));
+
+      Files.writeString(classes.resolve("X.class"), "Y");
+      Assertions.assertFalse(reloaded.upToDate(step, step.fingerprint()));
+      Files.delete(jar);
+      Assertions.assertFalse(reloaded.upToDate(step, initial));
+    }
+  }
+
+  @Nested
+  class ArchiveStepsTests {
+    @TempDir Path temp;
+
+    @Test
+    void deferredStepsRunAfterStepsWritingTheirInputs() {
+      var steps = new ArchiveSteps(temp.resolve("archives.properties"));
+      var done = new CopyOnWriteArrayList<String>();
+      var modules = temp.resolve("modules");
+      defer(steps, done, "a", List.of("--create", "--file", modules + "/a.jar", "a"));
+      defer(steps, done, "b", List.of("--create", "--file", modules + "/b.jar", "b"));
+      defer(steps, done, "c", List.of("--create", "--file", "c.jar", "-p", modules.toString()));
+      Assertions.assertEquals(List.of(), done);
+
+      steps.flush(new ModuleScheduler(4));
+      Assertions.assertEquals(Set.of("a", "b", "c"), Set.copyOf(done));
+      Assertions.assertEquals("c", done.getLast());
+      steps.flush(new ModuleScheduler(4));
+      Assertions.assertEquals(3, done.size());
+    }
+
+    @Test
+    void deferringAStepWritingTheSameOutputRunsThePreviousStepFirst() {
+      var steps = new ArchiveSteps(temp.resolve("archives.properties"));
+      var done = new CopyOnWriteArrayList<String>();
+      defer(steps, done, "1", List.of("--create", "--file", "a.jar", "a"));
+      defer(steps, done, "2", List.of("--create", "--file", "a.jar", "b"));
+      Assertions.assertEquals(List.of("1"), done);
+      steps.flush(new ModuleScheduler(1));
+      Assertions.assertEquals(List.of("1", "2"), done);
+    }
+
+    static void defer(ArchiveSteps steps, List<String> done, String name, List<String> args) {
+      steps.defer(ArchiveStep.of("jar", args).orElseThrow(), () -> done.add(name));
+    }
+  }
+
+  @Nested
+  class BuildCacheTests {
+    @TempDir Path temp;
+
+    @Test
+    void storedOutputsAreRestored() throws IOException {
+      var cache = BuildCache.of(temp.resolve("cache"), 1 << 20);
+      var classes = Files.createDirectories(temp.resolve("classes"));
+      Files.writeString(Files.createDirectories(classes.resolve("p")).resolve("X.class"), "X");
+
+      Assertions.assertFalse(cache.restore("key", Map.of("classes", classes)));
+      cache.store("key", Map.of("classes", classes));
+
+      var restored = temp.resolve("restored");
+      Assertions.assertTrue(cache.restore("key", Map.of("classes", restored)));
+      Assertions.assertEquals("X", Files.readString(restored.resolve("p/X.class")));
+      var statistics = cache.statistics();
+      Assertions.assertEquals(1, statistics.hits());
+      Assertions.assertEquals(1, statistics.misses());
+      Assertions.assertEquals(1, statistics.stores());
+    }
+
+    @Test
+    void storedEntriesArePushedInTheBackgroundAndFailedPushesAreIgnored() throws IOException {
+      var pushed = new CopyOnWriteArrayList<String>();
+      var remote =
+          new RemoteCache() {
+            @Override
+            public boolean fetch(String key, Path directory) {
+              return false;
+            }
+
+            @Override
+            public void push(String key, Path directory) {
+              if (key.equals("failing")) throw new IllegalStateException("unreachable");
+              pushed.add(key + ":" + Files.isRegularFile(directory.resolve("jar")));
+            }
+          };
+      var cache = BuildCache.of(temp.resolve("cache"), 1 << 20, remote);
+      var jar = Files.writeString(temp.resolve("a.jar"), "PK");
+
+      cache.store("failing", Map.of("jar", jar));
+      cache.store("key", Map.of("jar", jar));
+      cache.awaitPushes();
+      Assertions.assertEquals(List.of("key:true"), pushed);
+      Assertions.assertEquals(2, cache.statistics().stores());
+    }
+
+    @Test
+    void restoringAnUnknownKeyIsAMiss() {
+      var cache = BuildCache.of(temp.resolve("cache"), 1 << 20);
+      var target = temp.resolve("target");
+      Assertions.assertFalse(cache.restore("unknown", Map.of("classes", target)));
+      Assertions.assertTrue(Files.notExists(target));
+    }
+  }
+
+  @Nested
+  class IndexedToolFinderTests {
+    @TempDir Path temp;
+
+    @Test
+    void firstToolFoundForAKeyWins() {
+      var jar = ToolProvider.findFirst("jar").orElseThrow();
+      var javac = ToolProvider.findFirst("javac").orElseThrow();
+      var first = Tool.of("a/x@1", jar);
+      var second = Tool.of("b/x@2", javac);
+      var finder = IndexedToolFinder.of(ToolFinder.of(first, second));
+      Assertions.assertSame(first, finder.find("x").orElseThrow());
+      Assertions.assertSame(first, finder.find("a/x@1").orElseThrow());
+      Assertions.assertSame(second, finder.find("b/x").orElseThrow());
+      Assertions.assertSame(second, finder.find("x@2").orElseThrow());
+      Assertions.assertTrue(finder.find("y").isEmpty());
+    }
+
+    @Test
+    void toolNamesOfModularJarFilesAreIndexed() throws IOException {
+      var lib = Files.createDirectories(temp.resolve("lib"));
+      var classes = temp.resolve("classes");
+      var src = Files.createDirectories(temp.resolve("src/echo/echo"));
+      Files.writeString(
+          src.resolveSibling("module-info.java"),
+          "module echo { provides java.util.spi.ToolProvider with echo.Echo; }");
+      Files.writeString(
+          src.resolve("Echo.java"),
+          """
+          package echo;
+          public class Echo implements java.util.spi.ToolProvider {
+            public String name() { return "echo"; }
+            public int run(java.io.PrintWriter out, java.io.PrintWriter err, String... args) {
+              return 0;
+            }
+          }
+          """);
+      var javac = ToolProvider.findFirst("javac").orElseThrow();
+      var source = temp.resolve("src");
+      var compile = List.of("-d", classes.toString(), "--module-source-path", source.toString());
+      var options = new ArrayList<>(compile);
+      options.addAll(List.of("--module", "echo"));
+      Assertions.assertEquals(0, javac.run(System.out, System.err, options.toArray(String[]::new)));
+      var jar = ToolProvider.findFirst("jar").orElseThrow();
+      var file = lib.resolve("echo.jar").toString();
+      var archive = List.of("--create", "--file", file, "--module-version", "1.0");
+      var create = new ArrayList<>(archive);
+      create.addAll(List.of("-C", classes.resolve("echo").toString(), "."));
+      Assertions.assertEquals(0, jar.run(System.out, System.err, create.toArray(String[]::new)));
+
+      var index = temp.resolve("tools.properties");
+      var finder = IndexedToolFinder.ofModulePath(lib, index);
+      Assertions.assertEquals("echo", finder.find("echo/echo@1.0").orElseThrow().name());
+      var properties = new Properties();
+      try (var reader = Files.newBufferedReader(index)) {
+        properties.load(reader);
+      }
+      var entry = properties.getProperty("echo.jar");
+      Assertions.assertTrue(entry.endsWith(" echo 1.0 echo=echo.Echo"));
+      var reloaded = IndexedToolFinder.ofModulePath(lib, index);
+      Assertions.assertEquals("echo", reloaded.find("echo").orElseThrow().name());
+    }
+  }
+
+  @Nested
+  class JavaWorkerPoolTests {
+    @TempDir Path temp;
+
+    @Test
+    void toolProviderRunsInWorkersWithSeparateOutputStreams() throws Exception {
+      var pool = new JavaWorkerPool("echo", echoJar(), 1, 1, 256L << 20);
+      try {
+        for (var args : List.of(List.of("1"), List.of("2", "3"))) {
+          var out = new StringWriter();
+          var err = new StringWriter();
+          var code = run(pool, out, err, args);
+          Assertions.assertEquals(args.size(), code);
+          Assertions.assertEquals("out:" + String.join(",", args), out.toString());
+          Assertions.assertEquals("err", err.toString());
+        }
+      } finally {
+        pool.close();
+      }
+    }
+
+    @Test
+    void applicationWithoutToolProviderRunsInFreshJvmWithSeparateOutputStreams()
+        throws Exception {
+      var pool = new JavaWorkerPool("unknown", echoJar(), 1, 1, 256L << 20);
+      var out = new StringWriter();
+      var err = new StringWriter();
+      Assertions.assertEquals(2, run(pool, out, err, List.of("a", "b")));
+      Assertions.assertEquals("out:a,b", out.toString());
+      Assertions.assertEquals("err", err.toString());
+    }
+
+    static int run(JavaWorkerPool pool, StringWriter out, StringWriter err, List<String> args) {
+      var strings = args.toArray(String[]::new);
+      return pool.provider().run(new PrintWriter(out), new PrintWriter(err), strings);
+    }
+
+    Path echoJar() throws IOException {
+      var source = temp.resolve("src/t/Echo.java");
+      Files.createDirectories(source.getParent());
+      Files.writeString(
+          source,
+          """
+          package t;
+          public class Echo implements java.util.spi.ToolProvider {
+            public String name() { return "echo"; }
+            public int run(java.io.PrintWriter out, java.io.PrintWriter err, String... args) {
+              out.print("out:" + String.join(",", args));
+              err.print("err");
+              return args.length;
+            }
+            public static void main(String... args) {
+              System.out.print("out:" + String.join(",", args));
+              System.err.print("err");
+              System.exit(args.length);
+            }
+          }
+          """);
+      var classes = temp.resolve("classes");
+      var services = Files.createDirectories(classes.resolve("META-INF/services"));
+      Files.writeString(services.resolve(ToolProvider.class.getName()), "t.Echo\n");
+      var javac = ToolProvider.findFirst("javac").orElseThrow();
+      var compile = List.of("-d", classes.toString(), source.toString());
+      Assertions.assertEquals(0, javac.run(System.out, System.err, compile.toArray(String[]::new)));
+      var file = temp.resolve("echo.jar");
+      var jar = ToolProvider.findFirst("jar").orElseThrow();
+      var archive = List.of("--create", "--file", file.toString(), "--main-class", "t.Echo");
+      var options = new ArrayList<>(archive);
+      options.addAll(List.of("-C", classes.toString(), "."));
+      Assertions.assertEquals(0, jar.run(System.out, System.err, options.toArray(String[]::new)));
+      return file;
+    }
+  }
+
+  @Nested
+  class LayeredTestRunnerTests {
+    static final String CONSOLE = LayeredTestRunner.CONSOLE;
+
+    @TempDir Path temp;
+
+    @Test
+    void testModulesRunInTheirOwnLayers() throws IOException {
+      runTestsOfModulesAAndB(false);
+    }
+
+    @Test
+    void testModulesRunInWorkerJvms() throws IOException {
+      runTestsOfModulesAAndB(true);
+    }
+
+    /** Runs a stand-in console launcher, it fails module b and reports each module it tests. */
+    void runTestsOfModulesAAndB(boolean fork) throws IOException {
+      var src = temp.resolve("src");
+      writeModule(src, "a", "");
+      writeModule(src, "b", "");
+      var console = Files.createDirectories(src.resolve(CONSOLE + "/org/junit/platform/console"));
+      Files.writeString(
+          src.resolve(CONSOLE).resolve("module-info.java"),
+          """
+          module org.junit.platform.console {
+            provides java.util.spi.ToolProvider with org.junit.platform.console.ConsoleLauncher;
+          }
+          """);
+      Files.writeString(
+          console.resolve("ConsoleLauncher.java"),
+          """
+          package org.junit.platform.console;
+          import java.io.PrintWriter;
+          import java.nio.file.*;
+          import java.util.List;
+          public class ConsoleLauncher implements java.util.spi.ToolProvider {
+            public String name() { return "junit"; }
+            public int run(PrintWriter out, PrintWriter err, String... args) {
+              var list = List.of(args);
+              var module = list.get(list.indexOf("--select-module") + 1);
+              var reports = Path.of(list.get(list.indexOf("--reports-dir") + 1));
+              try {
+                Thread.currentThread().getContextClassLoader().loadClass(module + ".Api");
+                var xml = "<?xml version='1.0'?><testsuite name='" + module + "'/>";
+                Files.createDirectories(reports);
+                Files.writeString(reports.resolve("TEST-" + module + ".xml"), xml);
+              } catch (Exception exception) {
+                exception.printStackTrace(err);
+                return 2;
+              }
+              out.println("Tested " + module);
+              return module.equals("b") ? 1 : 0;
+            }
+            public static void main(String... args) {
+              var out = new PrintWriter(System.out, true);
+              System.exit(new ConsoleLauncher().run(out, new PrintWriter(System.err, true), args));
+            }
+          }
+          """);
+      var classes = temp.resolve("classes");
+      var modules = "a,b," + CONSOLE;
+      var args = List.of("--module-source-path", src + "", "-d", classes + "", "-m", modules);
+      var out = new PrintWriter(new StringWriter());
+      Assertions.assertEquals(0, CompilerService.shared().compile(args, out));
+
+      var reports = temp.resolve("reports");
+      var runner = new LayeredTestRunner(List.of(classes), reports, 2, fork);
+      var results = runner.execute(List.of("b", "a"), List.of());
+      var names = results.stream().map(LayeredTestRunner.Result::module).toList();
+      Assertions.assertEquals(List.of("a", "b"), names);
+      Assertions.assertTrue(results.getFirst().passed());
+      Assertions.assertEquals(1, results.getLast().code());
+      Assertions.assertEquals("Tested a", results.getFirst().output().strip());
+      var merged = Files.readString(reports.resolve("TEST-all.xml"));
+      Assertions.assertTrue(merged.contains("<testsuite name='a'/>\n<testsuite name='b'/>"));
+      var exception =
+          Assertions.assertThrows(
+              RuntimeException.class, () -> LayeredTestRunner.requireAllPassed(results));
+      Assertions.assertEquals("1 test module(s) failed: [b]", exception.getMessage());
+    }
+  }
+
+  @Nested
+  class ModuleLocationIndexTests {
+    @Test
+    void firstSourceWinsAndShadowedMappingsAreReported() {
+      var index =
+          ModuleLocationIndex.builder()
+              .with("a", "https://host/a-1.jar")
+              .with("lib", Map.of("a", "https://host/a-2.jar", "b", "https://host/b.jar"))
+              .with("same", Map.of("b", "https://host/b.jar"))
+              .build();
+      Assertions.assertEquals(Optional.of("https://host/a-1.jar"), index.locate("a"));
+      Assertions.assertEquals(Set.of("a", "b"), index.names());
+      var winner = "a=https://host/a-1.jar";
+      var conflict = new ModuleLocationIndex.Conflict("a", winner, "https://host/a-1.jar", "lib");
+      Assertions.assertEquals(List.of(conflict), index.conflicts());
+    }
+
+    @Test
+    void mavenPackageUrlsAreTranslatedToUris() {
+      var purl = "pkg:maven/org.example/x-core@1.0?classifier=jdk21";
+      var index = ModuleLocationIndex.builder().with("x", purl).build();
+      var path = "/org/example/x-core/1.0/x-core-1.0-jdk21.jar";
+      var expected = URI.create(ModuleLocationIndex.MAVEN_CENTRAL + path);
+      Assertions.assertEquals(Map.of("x", expected), index.locateAll(List.of("x", "y")));
+      Assertions.assertEquals(Optional.of(expected), index.toLocator().apply("x"));
+    }
+  }
+
+  @Nested
+  class ModuleStoreTests {
+    @TempDir Path temp;
+
+    @Test
+    void downloadsAreVerifiedAndStoredByTheirChecksum() throws IOException {
+      var served = temp.resolve("server");
+      var key = "0123456789abcdef";
+      Files.createDirectories(served);
+      var hash = Digest.of(Files.writeString(served.resolve(key), "module"));
+      try (var server = RemoteCacheServer.start(loopback(), served, 1024)) {
+        var store = new ModuleStore(temp.resolve("store"));
+        var location = URI.create(server.uri() + key + "#SIZE=6&SHA-256=" + hash);
+        var target = temp.resolve("lib/m.jar");
+        Assertions.assertFalse(store.fetch(location, target));
+        Assertions.assertEquals("module", Files.readString(target));
+        Assertions.assertTrue(Files.isRegularFile(store.root().resolve("objects").resolve(hash)));
+        Assertions.assertTrue(store.fetch(location, temp.resolve("lib/n.jar")));
+
+        var wrong = URI.create(server.uri() + key + "#SHA-256=" + "0".repeat(64));
+        var other = temp.resolve("lib/o.jar");
+        Assertions.assertThrows(UncheckedIOException.class, () -> store.fetch(wrong, other));
+        Assertions.assertTrue(Files.notExists(other));
+      }
+    }
+
+    @Test
+    void objectsAreReadOnlyAndVerifiedBeforeTheyArePlaced() throws IOException {
+      var store = new ModuleStore(temp.resolve("store"));
+      var downloads = new CopyOnWriteArrayList<URI>();
+      ModuleStore.Downloader downloader =
+          (uri, file) -> {
+            downloads.add(uri);
+            Files.writeString(file, "module");
+          };
+      var location = URI.create("https://host/m.jar");
+      Assertions.assertFalse(store.fetch(location, temp.resolve("lib/m.jar"), downloader));
+      var object = store.root().resolve("objects").resolve(Digest.of(temp.resolve("lib/m.jar")));
+      var permissions = PosixFilePermissions.toString(Files.getPosixFilePermissions(object));
+      Assertions.assertEquals("r--r--r--", permissions);
+      try (var locks = Files.list(store.root().resolve("locks"))) {
+        Assertions.assertEquals(0L, locks.count());
+      }
+
+      object.toFile().setWritable(true);
+      Files.writeString(object, "corrupted");
+      Assertions.assertFalse(store.fetch(location, temp.resolve("lib/n.jar"), downloader));
+      Assertions.assertEquals("module", Files.readString(temp.resolve("lib/n.jar")));
+      Assertions.assertEquals(2, downloads.size());
+    }
+
+    static InetSocketAddress loopback() {
+      return new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+    }
+  }
+
+  @Nested
+  class OutputCaptureTests {
+    @Test
+    void headAndTailAreKeptAndBytesInBetweenAreCounted() {
+      var capture = OutputCapture.ofLimit(8);
+      write(capture, "abcd");
+      Assertions.assertEquals("abcd", capture.toString());
+      write(capture, "0123456789wxyz");
+      Assertions.assertEquals(18, capture.size());
+      Assertions.assertEquals(10, capture.omitted());
+      var expected = "abcd%n[... 10 bytes omitted ...]%nwxyz".formatted();
+      Assertions.assertEquals(expected, capture.toString());
+    }
+
+    @Test
+    void linesAreReportedToTheListenerWithoutLimit() {
+      var lines = new ArrayList<String>();
+      var capture = OutputCapture.ofLimit(4).withLineListener(lines::add);
+      write(capture, "first line\r\nsecond");
+      write(capture, " line\nlast");
+      capture.close();
+      Assertions.assertEquals(List.of("first line", "second line", "last"), lines);
+    }
+
+    static void write(OutputCapture capture, String text) {
+      var bytes = text.getBytes(StandardCharsets.UTF_8);
+      capture.write(bytes, 0, bytes.length);
+    }
+  }
+
+  @Nested
+  class RemoteCacheTests {
+    @TempDir Path temp;
+
+    @Test
+    void entriesStoredByOneCacheAreRestoredByAnother() throws IOException {
+      try (var server = RemoteCacheServer.startOnLoopbackAddress(temp.resolve("server"))) {
+        var remote = RemoteCache.ofHttp(server.uri());
+        var classes = Files.createDirectories(temp.resolve("classes"));
+        Files.writeString(classes.resolve("X.class"), "X");
+        var key = "0123456789abcdef";
+        var first = BuildCache.of(temp.resolve("first"), 1 << 20, remote);
+        first.store(key, Map.of("classes", classes));
+        first.awaitPushes();
+
+        var second = BuildCache.of(temp.resolve("second"), 1 << 20, remote);
+        var restored = temp.resolve("restored");
+        Assertions.assertTrue(second.restore(key, Map.of("classes", restored)));
+        Assertions.assertEquals("X", Files.readString(restored.resolve("X.class")));
+        Assertions.assertEquals(1, second.statistics().downloads());
+      }
+    }
+
+    @Test
+    void entriesExceedingTheLimitOfTheServerAreRejected() throws IOException {
+      var address = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+      try (var server = RemoteCacheServer.start(address, temp.resolve("server"), 16)) {
+        Assertions.assertTrue(server.uri().getHost().startsWith("127."));
+        var remote = RemoteCache.ofHttp(server.uri());
+        var classes = Files.createDirectories(temp.resolve("classes"));
+        Files.writeString(classes.resolve("X.class"), "X".repeat(1000));
+        var key = "fedcba9876543210";
+        remote.push(key, classes);
+        Assertions.assertFalse(remote.fetch(key, temp.resolve("fetched")));
+        Assertions.assertTrue(Files.notExists(temp.resolve("server").resolve(key)));
+      }
+    }
+  }
+
+  @Nested
+  class ResolutionLockTests {
+    @TempDir Path temp;
+
+    @Test
+    void lockedModulesArePinnedAndVerified() throws IOException {
+      writeModule(temp.resolve("src"), "a", "");
+      var classes = temp.resolve("classes");
+      var args = List.of("--module-source-path", temp + "/src", "-d", classes + "", "-m", "a");
+      var out = new PrintWriter(new StringWriter());
+      Assertions.assertEquals(0, CompilerService.shared().compile(args, out));
+      var lib = Files.createDirectories(temp.resolve("lib"));
+      var jar = lib.resolve("a.jar");
+      CompilerServiceTests.jar(jar, classes.resolve("a"));
+
+      var uri = URI.create("https://host/a.jar");
+      ResolutionLock.of(lib, _ -> Optional.of(uri)).store(temp.resolve("modules.lock"));
+      var lock = ResolutionLock.load(temp.resolve("modules.lock"));
+      var pinned = "%s#SIZE=%d&SHA-256=%s".formatted(uri, Files.size(jar), Digest.of(jar));
+      Assertions.assertEquals(URI.create(pinned), lock.location("a").orElseThrow());
+      Assertions.assertTrue(lock.matches(lib));
+      Files.setLastModifiedTime(jar, FileTime.fromMillis(0));
+      Assertions.assertTrue(lock.matches(lib));
+      lock.verify(lib);
+
+      Files.writeString(jar, "tampered");
+      Assertions.assertFalse(lock.matches(lib));
+      Assertions.assertThrows(IllegalStateException.class, () -> lock.verify(lib));
+    }
+  }
+
+  @Nested
+  class SourceWatcherTests {
+    @TempDir Path temp;
+
+    @Test
+    void burstsOfChangesAreReportedAsOne() throws Exception {
+      var a = Files.createDirectories(temp.resolve("src/a"));
+      try (var watcher = new SourceWatcher(List.of(temp.resolve("src")), Duration.ofMillis(500))) {
+        var writer =
+            Thread.ofPlatform()
+                .start(
+                    () -> {
+                      write(a.resolve("A.java"), 0);
+                      write(a.resolve(".A.java.swp"), 100);
+                      write(a.resolve("A.java~"), 0);
+                      write(a.resolve("B.java"), 100);
+                    });
+        var changes = watcher.await();
+        writer.join();
+        Assertions.assertEquals(Set.of(a.resolve("A.java"), a.resolve("B.java")), changes);
+
+        write(a.resolve("C.java"), 0);
+        Assertions.assertEquals(Set.of(a.resolve("C.java")), watcher.await());
+      }
+    }
+
+    static void write(Path file, long delay) {
+      try {
+        Thread.sleep(delay);
+        Files.writeString(file, file.getFileName().toString());
+      } catch (IOException exception) {
+        throw new UncheckedIOException(exception);
+      } catch (InterruptedException exception) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  @Nested
+  class TestImpactTests {
+    @TempDir Path temp;
+
+    @Test
+    void onlyTestModulesRequiringChangedModulesAreSelected() throws IOException {
+      var src = temp.resolve("src");
+      writeModule(src, "a", "");
+      writeModule(src, "b", "requires a;");
+      writeModule(src, "c", "");
+      var classes = temp.resolve("classes");
+      var javac = ToolProvider.findFirst("javac").orElseThrow();
+      var args =
+          List.of("--module-source-path", src.toString(), "-d", classes.toString(), "-m", "a,b,c");
+      Assertions.assertEquals(0, javac.run(System.out, System.err, args.toArray(String[]::new)));
+      var manifest = temp.resolve("test-impact.properties");
+      var tests = List.of("b", "c");
+
+      var initial = new TestImpact(List.of(classes), manifest);
+      Assertions.assertEquals(Set.of("b", "c"), initial.affected(tests));
+      initial.commit(tests);
+      var unchanged = new TestImpact(List.of(classes), manifest);
+      Assertions.assertEquals(Set.of(), unchanged.affected(tests));
+
+      Files.writeString(classes.resolve("a/a/Resource.txt"), "changed");
+      var changed = new TestImpact(List.of(classes), manifest);
+      Assertions.assertEquals(Set.of("b"), changed.affected(tests));
+    }
+  }
+
+  @Nested
+  class ToolBatchTests {
+    @Test
+    void resultsAreReturnedInTheOrderCallsWereAdded() {
+      var results =
+          new ToolBatch(ToolRunner.ofSilence(), 1)
+              .add("jar", ToolCall.of("jar").add("--version"))
+              .add("javac", ToolCall.of("javac").add("--version"), "jar")
+              .add(ToolCall.of("javadoc").add("--version"))
+              .run();
+      var ids = results.stream().map(ToolBatch.Result::id).toList();
+      Assertions.assertEquals(List.of("jar", "javac", "javadoc#3"), ids);
+      Assertions.assertTrue(results.stream().allMatch(result -> result.code() == 0));
+      Assertions.assertTrue(results.get(1).output().startsWith("javac"));
+    }
+
+    @Test
+    void failuresAreAggregatedAndCallsOrderedAfterThemAreSkipped() {
+      var batch =
+          new ToolBatch(ToolRunner.ofSilence(), 2)
+              .add("bad", ToolCall.of("jar").add("--bad-option"))
+              .add("worse", ToolCall.of("javac").add("--worse-option"))
+              .add("good", ToolCall.of("javac").add("--version"))
+              .add("after", ToolCall.of("javac").add("--version"), "bad", "good");
+      var exception = Assertions.assertThrows(RuntimeException.class, batch::run);
+      Assertions.assertEquals("2 call(s) failed: [bad, worse], 1 skipped", exception.getMessage());
+      Assertions.assertEquals(2, exception.getSuppressed().length);
+    }
+
+    @Test
+    void unknownAndDuplicateIdsAreRejected() {
+      var batch = new ToolBatch(ToolRunner.ofSilence(), 1).add("a", ToolCall.of("jar"));
+      var jar = ToolCall.of("jar");
+      Assertions.assertThrows(IllegalArgumentException.class, () -> batch.add("a", jar));
+      Assertions.assertThrows(IllegalArgumentException.class, () -> batch.add("b", jar, "c"));
+    }
+  }
+
+  @Nested
+  class ToolInstallationTests {
+    @TempDir Path temp;
+
+    @Test
+    void directoriesAreInstalledOnceAndAgainAfterTheyWereDeleted() throws IOException {
+      var installs = new CopyOnWriteArrayList<Path>();
+      ToolInstallation.Installer installer =
+          directory -> {
+            installs.add(directory);
+            Files.writeString(directory.resolve("tool.txt"), "tool");
+          };
+      var home = temp.resolve("tools/tool");
+      Assertions.assertEquals(home, ToolInstallation.ensure(home, installer));
+      ToolInstallation.ensure(home, installer);
+      Assertions.assertEquals(1, installs.size());
+      Assertions.assertTrue(Files.isRegularFile(home.resolve(ToolInstallation.MARKER)));
+
+      TreeDeleter.delete(home);
+      ToolInstallation.ensure(home, installer);
+      Assertions.assertEquals(2, installs.size());
+      Assertions.assertEquals("tool", Files.readString(home.resolve("tool.txt")));
+    }
+  }
+
+  @Nested
+  class TreeDeleterTests {
+    @TempDir Path temp;
+
+    @Test
+    void treesAreDeletedWithoutFollowingSymbolicLinks() throws IOException {
+      var kept = Files.writeString(temp.resolve("kept.txt"), "kept");
+      var tree = Files.createDirectories(temp.resolve("tree/a/b"));
+      Files.writeString(tree.resolve("c.txt"), "c");
+      Files.createSymbolicLink(temp.resolve("tree/link"), kept);
+      TreeDeleter.deleteInParallel(temp.resolve("tree"));
+      Assertions.assertTrue(Files.notExists(temp.resolve("tree")));
+      Assertions.assertEquals("kept", Files.readString(kept));
+      var root = Path.of("/");
+      Assertions.assertThrows(IllegalArgumentException.class, () -> TreeDeleter.delete(root));
+    }
+
+    @Test
+    void treesMovedIntoTheTrashAreDeletedInTheBackground() throws Exception {
+      var leftover = Files.createDirectories(temp.resolve(TreeDeleter.TRASH).resolve("leftover"));
+      Files.writeString(leftover.resolve("x.txt"), "x");
+      var out = Files.createDirectories(temp.resolve("out/main"));
+      Files.writeString(out.resolve("a.txt"), "a");
+      TreeDeleter.deleteInBackground(temp.resolve("out"));
+      Assertions.assertTrue(Files.notExists(temp.resolve("out")));
+      var trash = temp.resolve(TreeDeleter.TRASH);
+      for (int i = 0; i < 500 && Files.exists(trash); i++) Thread.sleep(10);
+      Assertions.assertTrue(Files.notExists(trash));
+    }
+  }
+
+  static void writeModule(Path src, String module, String directives) throws IOException {
+    var root = Files.createDirectories(src.resolve(module).resolve(module));
+    var info = "module %s { %s exports %s; }".formatted(module, directives, module);
+    Files.writeString(src.resolve(module).resolve("module-info.java"), info);
+    var api = "package %s; public class Api {}".formatted(module);
+    Files.writeString(root.resolve("Api.java"), api);
+  }
 }